@@ -62,6 +62,10 @@ public class DisruptorJournal implements Journal {
       writer.write(event.getKey());
       writer.write(';');
       writer.write(event.getResult());
+      if (event.getSessionId() != null) {
+        writer.write(';');
+        writer.write(event.getSessionId());
+      }
       writer.write('\n');
 
       // estimate the time the ring buffer was at capacity and blocked producer threads
@@ -95,6 +99,11 @@ public class DisruptorJournal implements Journal {
 
   @Override
   public void log(long start, long end, String operationName, String key, String result) {
-    disruptor.getRingBuffer().publishEvent((event, sequence) -> event.fillWith(start, end, operationName, key, result));
+    log(start, end, operationName, key, result, null);
+  }
+
+  @Override
+  public void log(long start, long end, String operationName, String key, String result, String sessionId) {
+    disruptor.getRingBuffer().publishEvent((event, sequence) -> event.fillWith(start, end, operationName, key, result, sessionId));
   }
 }
@@ -30,6 +30,11 @@ public class FileJournal implements Journal {
 
   @Override
   public void log(long start, long end, String operationName, String key, String result) {
+    log(start, end, operationName, key, result, null);
+  }
+
+  @Override
+  public void log(long start, long end, String operationName, String key, String result, String sessionId) {
     try {
       writer.write(Long.toString(start));
       writer.write(';');
@@ -40,6 +45,10 @@ public class FileJournal implements Journal {
       writer.write(key);
       writer.write(';');
       writer.write(result);
+      if (sessionId != null) {
+        writer.write(';');
+        writer.write(sessionId);
+      }
       writer.write('\n');
     } catch (IOException e) {
       throw new RuntimeException("Failed to write to journal", e);
@@ -26,4 +26,13 @@ public interface Journal extends AutoCloseable {
 
   void log(long start, long end, String operationName, String key, String result);
 
+  /**
+   * Log an operation issued by a given session, e.g.: a client thread. The operations of a session are sequential, so
+   * the verifier can order them by program order instead of exploring their interleavings.
+   * The default implementation drops the session id.
+   */
+  default void log(long start, long end, String operationName, String key, String result, String sessionId) {
+    log(start, end, operationName, key, result);
+  }
+
 }
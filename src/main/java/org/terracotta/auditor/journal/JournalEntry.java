@@ -22,16 +22,22 @@ public class JournalEntry {
   private String operationName;
   private String key;
   private String result;
+  private String sessionId;
 
   public JournalEntry() {
   }
 
   public void fillWith(long start, long end, String operationName, String key, String result) {
+    fillWith(start, end, operationName, key, result, null);
+  }
+
+  public void fillWith(long start, long end, String operationName, String key, String result, String sessionId) {
     this.start = start;
     this.end = end;
     this.operationName = operationName;
     this.key = key;
     this.result = result;
+    this.sessionId = sessionId;
   }
 
   public long getStart() {
@@ -54,4 +60,11 @@ public class JournalEntry {
     return result;
   }
 
+  /**
+   * @return the id of the session which issued the operation, or null.
+   */
+  public String getSessionId() {
+    return sessionId;
+  }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.journal.index;
+
+/**
+ * A contiguous range of journal lines, along with the timestamp bounds and the keys of the operations it contains.
+ */
+public class IndexBlock {
+  private final long offset;
+  private final long length;
+  private final int entryCount;
+  private final long minStartTs;
+  private final long minEndTs;
+  private final long maxEndTs;
+  private final KeyBloomFilter keys;
+
+  IndexBlock(long offset, long length, int entryCount, long minStartTs, long minEndTs, long maxEndTs, KeyBloomFilter keys) {
+    this.offset = offset;
+    this.length = length;
+    this.entryCount = entryCount;
+    this.minStartTs = minStartTs;
+    this.minEndTs = minEndTs;
+    this.maxEndTs = maxEndTs;
+    this.keys = keys;
+  }
+
+  /**
+   * @return the offset in bytes of the block's first line in the journal file.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the length in bytes of the block, including the last line's terminator.
+   */
+  public long getLength() {
+    return length;
+  }
+
+  public int getEntryCount() {
+    return entryCount;
+  }
+
+  public long getMinStartTs() {
+    return minStartTs;
+  }
+
+  public long getMinEndTs() {
+    return minEndTs;
+  }
+
+  public long getMaxEndTs() {
+    return maxEndTs;
+  }
+
+  /**
+   * @return true if an operation of this block may have been executing at some point between both timestamps, inclusive.
+   */
+  public boolean overlaps(long fromTs, long toTs) {
+    return minStartTs <= toTs && maxEndTs >= fromTs;
+  }
+
+  /**
+   * @return false if none of the operations of this block are on the given key, true if some may be.
+   */
+  public boolean mightContain(String key) {
+    return keys.mightContain(key);
+  }
+
+  KeyBloomFilter getKeys() {
+    return keys;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexBlock offset=" + offset + " length=" + length + " entries=" + entryCount + " minStartTs=" + minStartTs + " endTs=[" + minEndTs + ", " + maxEndTs + "]";
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.journal.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A sparse index of a journal file, meant to be stored alongside it. The journal is cut into blocks of a fixed
+ * number of lines, and for each of them the index records its location in the file, the bounds of its operations'
+ * timestamps and a bloom filter of their keys. This allows seeking straight to the part of a journal covering
+ * a time range, decoding blocks independently, or skipping the blocks that cannot contain a key.
+ */
+public class JournalIndex {
+
+  public static final int DEFAULT_ENTRIES_PER_BLOCK = 4096;
+  public static final String FILE_EXTENSION = ".idx";
+
+  private static final int MAGIC = 0x4a494458;
+  private static final int VERSION = 1;
+
+  private final long journalLength;
+  private final int entriesPerBlock;
+  private final List<IndexBlock> blocks;
+
+  private JournalIndex(long journalLength, int entriesPerBlock, List<IndexBlock> blocks) {
+    this.journalLength = journalLength;
+    this.entriesPerBlock = entriesPerBlock;
+    this.blocks = blocks;
+  }
+
+  /**
+   * @return the path of the sidecar index file of a journal.
+   */
+  public static Path indexPathOf(Path journalPath) {
+    return journalPath.resolveSibling(journalPath.getFileName() + FILE_EXTENSION);
+  }
+
+  public static JournalIndex build(Path journalPath) throws IOException {
+    return build(journalPath, DEFAULT_ENTRIES_PER_BLOCK);
+  }
+
+  /**
+   * Index a journal with a single sequential pass over it.
+   */
+  public static JournalIndex build(Path journalPath, int entriesPerBlock) throws IOException {
+    if (entriesPerBlock <= 0) {
+      throw new IllegalArgumentException("entriesPerBlock must be positive : " + entriesPerBlock);
+    }
+    List<IndexBlock> blocks = new ArrayList<>();
+    BlockBuilder blockBuilder = new BlockBuilder(0L, entriesPerBlock);
+    long offset = 0L;
+
+    try (InputStream in = Files.newInputStream(journalPath)) {
+      byte[] buffer = new byte[64 * 1024];
+      ByteArrayOutputStream lineBytes = new ByteArrayOutputStream(256);
+      while (true) {
+        int read = in.read(buffer);
+        for (int i = 0; i < read; i++) {
+          offset++;
+          if (buffer[i] != '\n') {
+            lineBytes.write(buffer[i]);
+          } else if (lineBytes.size() > 0) {
+            blockBuilder.add(new String(lineBytes.toByteArray(), StandardCharsets.UTF_8), offset);
+            lineBytes.reset();
+            if (blockBuilder.entryCount == entriesPerBlock) {
+              blocks.add(blockBuilder.build());
+              blockBuilder = new BlockBuilder(offset, entriesPerBlock);
+            }
+          }
+        }
+        if (read < 0) {
+          if (lineBytes.size() > 0) {
+            // last line without terminator
+            blockBuilder.add(new String(lineBytes.toByteArray(), StandardCharsets.UTF_8), offset);
+          }
+          break;
+        }
+      }
+    }
+    if (blockBuilder.entryCount > 0) {
+      blocks.add(blockBuilder.build());
+    }
+
+    return new JournalIndex(offset, entriesPerBlock, Collections.unmodifiableList(blocks));
+  }
+
+  public static JournalIndex readFrom(Path indexPath) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a journal index : " + indexPath);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported journal index version " + version + " : " + indexPath);
+      }
+      long journalLength = in.readLong();
+      int entriesPerBlock = in.readInt();
+      int blockCount = in.readInt();
+      List<IndexBlock> blocks = new ArrayList<>(blockCount);
+      for (int i = 0; i < blockCount; i++) {
+        long offset = in.readLong();
+        long length = in.readLong();
+        int entryCount = in.readInt();
+        long minStartTs = in.readLong();
+        long minEndTs = in.readLong();
+        long maxEndTs = in.readLong();
+        long[] words = new long[in.readInt()];
+        for (int w = 0; w < words.length; w++) {
+          words[w] = in.readLong();
+        }
+        blocks.add(new IndexBlock(offset, length, entryCount, minStartTs, minEndTs, maxEndTs, new KeyBloomFilter(words)));
+      }
+      return new JournalIndex(journalLength, entriesPerBlock, Collections.unmodifiableList(blocks));
+    }
+  }
+
+  public void writeTo(Path indexPath) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(journalLength);
+      out.writeInt(entriesPerBlock);
+      out.writeInt(blocks.size());
+      for (IndexBlock block : blocks) {
+        out.writeLong(block.getOffset());
+        out.writeLong(block.getLength());
+        out.writeInt(block.getEntryCount());
+        out.writeLong(block.getMinStartTs());
+        out.writeLong(block.getMinEndTs());
+        out.writeLong(block.getMaxEndTs());
+        long[] words = block.getKeys().getWords();
+        out.writeInt(words.length);
+        for (long word : words) {
+          out.writeLong(word);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return false if the journal changed size since it got indexed, meaning this index cannot be trusted.
+   */
+  public boolean isUpToDate(Path journalPath) throws IOException {
+    return Files.size(journalPath) == journalLength;
+  }
+
+  public List<IndexBlock> getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * @return the blocks containing operations that may have been executing between both timestamps, inclusive.
+   */
+  public List<IndexBlock> findBlocks(long fromTs, long toTs) {
+    return blocks.stream().filter(block -> block.overlaps(fromTs, toTs)).collect(Collectors.toList());
+  }
+
+  /**
+   * @return the blocks that may contain operations on the given key that may have been executing between both
+   * timestamps, inclusive.
+   */
+  public List<IndexBlock> findBlocks(String key, long fromTs, long toTs) {
+    return blocks.stream().filter(block -> block.overlaps(fromTs, toTs) && block.mightContain(key)).collect(Collectors.toList());
+  }
+
+  /**
+   * Read the lines of a single block, without reading anything else from the journal.
+   */
+  public static List<String> readBlock(Path journalPath, IndexBlock block) throws IOException {
+    if (block.getLength() > Integer.MAX_VALUE) {
+      throw new IOException("Block too large to be read at once : " + block);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) block.getLength());
+    try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+      long position = block.getOffset();
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new IOException("Journal " + journalPath + " is shorter than its index : " + block);
+        }
+        position += read;
+      }
+    }
+    String contents = new String(buffer.array(), StandardCharsets.UTF_8);
+    List<String> lines = new ArrayList<>(block.getEntryCount());
+    Arrays.stream(contents.split("\n")).filter(line -> !line.isEmpty()).forEach(lines::add);
+    return lines;
+  }
+
+  private static class BlockBuilder {
+    private final long offset;
+    private final KeyBloomFilter keys;
+    private int entryCount = 0;
+    private long endOffset;
+    private long minStartTs = Long.MAX_VALUE;
+    private long minEndTs = Long.MAX_VALUE;
+    private long maxEndTs = Long.MIN_VALUE;
+
+    BlockBuilder(long offset, int entriesPerBlock) {
+      this.offset = offset;
+      this.endOffset = offset;
+      this.keys = new KeyBloomFilter(entriesPerBlock);
+    }
+
+    void add(String line, long lineEndOffset) {
+      int startSeparator = line.indexOf(';');
+      int endSeparator = line.indexOf(';', startSeparator + 1);
+      int nameSeparator = line.indexOf(';', endSeparator + 1);
+      int keySeparator = line.indexOf(';', nameSeparator + 1);
+      if (keySeparator < 0) {
+        throw new IllegalArgumentException("Malformed journal line : " + line);
+      }
+      long startTs = Long.parseLong(line.substring(0, startSeparator));
+      long endTs = Long.parseLong(line.substring(startSeparator + 1, endSeparator));
+
+      keys.add(line.substring(nameSeparator + 1, keySeparator));
+      minStartTs = Math.min(minStartTs, startTs);
+      minEndTs = Math.min(minEndTs, endTs);
+      maxEndTs = Math.max(maxEndTs, endTs);
+      entryCount++;
+      endOffset = lineEndOffset;
+    }
+
+    IndexBlock build() {
+      return new IndexBlock(offset, endOffset - offset, entryCount, minStartTs, minEndTs, maxEndTs, keys);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.journal.index;
+
+/**
+ * A fixed-size bloom filter of journal keys, using double hashing over {@link String#hashCode()}.
+ */
+class KeyBloomFilter {
+  private static final int BITS_PER_KEY = 10;
+  private static final int HASH_COUNT = 7;
+
+  private final long[] words;
+
+  KeyBloomFilter(int expectedKeys) {
+    this(new long[Math.max(1, (expectedKeys * BITS_PER_KEY + 63) / 64)]);
+  }
+
+  KeyBloomFilter(long[] words) {
+    this.words = words;
+  }
+
+  void add(String key) {
+    int h1 = key.hashCode();
+    int h2 = mix(h1);
+    long bitCount = words.length * 64L;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  boolean mightContain(String key) {
+    int h1 = key.hashCode();
+    int h2 = mix(h1);
+    long bitCount = words.length * 64L;
+    for (int i = 0; i < HASH_COUNT; i++) {
+      long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long[] getWords() {
+    return words;
+  }
+
+  private static int mix(int h) {
+    // murmur3 finalizer, makes the second hash independent enough from String.hashCode()
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h | 1;
+  }
+}
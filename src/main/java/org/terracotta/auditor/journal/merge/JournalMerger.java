@@ -43,16 +43,27 @@ public class JournalMerger {
   }
 
   public void mergeTo(Path outputPath) throws Exception {
+    try (Stream<String> mergedStreams = merge()) {
+      Files.write(outputPath, (Iterable<String>) mergedStreams::iterator);
+    }
+  }
+
+  /**
+   * Merge the input journals, ordered by the operations' end timestamps. The journals are read incrementally as the
+   * returned stream is consumed, and closing it closes all of them.
+   *
+   * @return a stream of the merged journal lines.
+   */
+  public Stream<String> merge() {
     Stream<String>[] streams = (Stream<String>[]) Arrays.stream(inputPaths).map(JournalMerger::pathToStream).toArray(Stream[]::new);
-    Stream<String> mergedStreams = mergeStreams(new LogEntryComparator(), streams);
-    Files.write(outputPath, (Iterable<String>) mergedStreams::iterator);
+    return mergeStreams(new LogEntryComparator(), streams);
   }
 
   private static <T> Stream<T> mergeStreams(Comparator<T> comparator, Stream<T>... streams) {
     Iterator<T>[] iterators = (Iterator<T>[]) Arrays.stream(streams).map(BaseStream::iterator).toArray(Iterator[]::new);
     Iterator<T> mergeIterator = new MergeIterator<T>(comparator, iterators);
     Spliterator<T> spliterator = new IteratorSpliterator<>(mergeIterator);
-    return StreamSupport.stream(spliterator, false);
+    return StreamSupport.stream(spliterator, false).onClose(() -> Arrays.stream(streams).forEach(BaseStream::close));
   }
 
   private static Stream<String> pathToStream(Path path) {
@@ -0,0 +1,356 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Allocation-free variant of the {@link OrderDeterminer} exploration for groups of at most 64 operations. A state is
+ * encoded as a {@code long} mask of the consumed operations plus an interned value id, and the outcome of applying an
+ * operation to a value is memoized since only a handful of distinct values usually appear in a group.
+ */
+class BitmaskExplorer {
+
+  static final int MAX_OPERATIONS = Long.SIZE;
+  // below that many states in a level, forking costs more than expanding the level on the current thread
+  static final int DEFAULT_PARALLEL_THRESHOLD = 16 * 1024;
+  private static final int CHUNK_SIZE = 1024;
+
+  private static final int UNEVALUATED = 0;
+  private static final int INVALID = -1;
+
+  private final KeyOperation[] operations;
+  private final int operationCount;
+  // for each operation index i, the mask of the operations starting before operations[i] ends
+  private final long[] startingBeforeEndOf;
+  private final long allOperationsMask;
+  private final long readOnlyMask;
+  // for each operation index, the mask of the operations that must precede it, null when there is no such constraint
+  private final long[] predecessorMasks;
+  private final int parallelThreshold;
+
+  private final List<RecordValue> values = new ArrayList<>();
+  private final Map<RecordValue, Integer> valueIds = new HashMap<>();
+  // transitions[op][valueId] : UNEVALUATED, INVALID or the resulting value id + 1
+  private final int[][] transitions;
+  // null when the intermediate values are not needed
+  private final Set<RecordValue> intermediateValues;
+
+  BitmaskExplorer(List<KeyOperation> operationsByEnd) {
+    this(operationsByEnd, DEFAULT_PARALLEL_THRESHOLD);
+  }
+
+  BitmaskExplorer(List<KeyOperation> operationsByEnd, int parallelThreshold) {
+    this(operationsByEnd, parallelThreshold, true);
+  }
+
+  BitmaskExplorer(List<KeyOperation> operationsByEnd, int parallelThreshold, boolean trackIntermediateValues) {
+    this.parallelThreshold = parallelThreshold;
+    this.intermediateValues = trackIntermediateValues ? new HashSet<>() : null;
+    this.operationCount = operationsByEnd.size();
+    if (operationCount > MAX_OPERATIONS) {
+      throw new IllegalArgumentException("Cannot explore more than " + MAX_OPERATIONS + " operations : " + operationCount);
+    }
+    this.operations = operationsByEnd.toArray(new KeyOperation[0]);
+    this.startingBeforeEndOf = new long[operationCount];
+    for (int i = 0; i < operationCount; i++) {
+      long endTS = operations[i].getEndTS();
+      long mask = 0L;
+      for (int j = 0; j < operationCount; j++) {
+        if (operations[j].getStartTS() <= endTS) {
+          mask |= 1L << j;
+        }
+      }
+      startingBeforeEndOf[i] = mask;
+    }
+    this.allOperationsMask = operationCount == MAX_OPERATIONS ? -1L : (1L << operationCount) - 1;
+    long readOnlyMask = 0L;
+    for (int i = 0; i < operationCount; i++) {
+      if (!operations[i].canMutate()) {
+        readOnlyMask |= 1L << i;
+      }
+    }
+    this.readOnlyMask = readOnlyMask;
+    this.predecessorMasks = OrderConstraints.predecessorMasks(operations);
+    this.transitions = new int[operationCount][4];
+  }
+
+  Values findPossibleOutcomes(Set<RecordValue> initialValues) {
+    return findPossibleOutcomes(initialValues, ExplorationBudget.UNLIMITED.start());
+  }
+
+  /**
+   * Explore from all the initial values at once : states are keyed by mask and value, so orders converging to the same
+   * value are only explored once whatever value they started from.
+   */
+  Values findPossibleOutcomes(Set<RecordValue> initialValues, ExplorationBudget.Tracker budget) {
+    return findPossibleOutcomesUntilCut(initialValues, Integer.MAX_VALUE, budget).getValues();
+  }
+
+  /**
+   * Explore until the first level, consuming at least {@code minCutSize} operations, where all states have consumed the
+   * same operations, or until the end if there is none.
+   */
+  CutOutcome findPossibleOutcomesUntilCut(Set<RecordValue> initialValues, int minCutSize, ExplorationBudget.Tracker budget) {
+    MaskStateSet[] frontier = { new MaskStateSet(16) };
+    MaskStateSet spare = new MaskStateSet(16);
+    for (RecordValue initialValue : initialValues) {
+      frontier[0].add(0L, intern(initialValue));
+    }
+
+    int frontierSize = frontier[0].size();
+    for (int level = 0; level < operationCount; level++) {
+      if (frontierSize >= parallelThreshold) {
+        frontier = expandInParallel(frontier, budget);
+      } else {
+        MaskStateSet expanded = spare;
+        expanded.clear();
+        for (MaskStateSet shard : frontier) {
+          for (int from = 0; from < shard.size(); from += CHUNK_SIZE) {
+            expand(shard, from, Math.min(from + CHUNK_SIZE, shard.size()), expanded::add);
+            budget.onExpansion(expanded.size());
+          }
+        }
+        spare = frontier.length == 1 ? frontier[0] : new MaskStateSet(16);
+        frontier = new MaskStateSet[] { expanded };
+      }
+
+      frontierSize = 0;
+      for (MaskStateSet shard : frontier) {
+        frontierSize += shard.size();
+      }
+      budget.onLevel(frontierSize);
+
+      int consumed = level + 1;
+      if (consumed >= minCutSize && consumed < operationCount && frontierSize > 0 && isCutCandidate(consumed)) {
+        long cutMask = (1L << consumed) - 1;
+        if (sharedMask(frontier) == cutMask) {
+          return new CutOutcome(BitSet.valueOf(new long[] { cutMask }), valuesOf(frontier));
+        }
+      }
+    }
+
+    return new CutOutcome(null, valuesOf(frontier));
+  }
+
+  /**
+   * Only the operations ending first can be cut, so that what remains of the group ends strictly after what was cut.
+   */
+  private boolean isCutCandidate(int consumed) {
+    return operations[consumed - 1].getEndTS() < operations[consumed].getEndTS();
+  }
+
+  /**
+   * @return the mask all the states have in common, or 0 if they differ.
+   */
+  private static long sharedMask(MaskStateSet[] frontier) {
+    long sharedMask = 0L;
+    for (MaskStateSet shard : frontier) {
+      for (int i = 0; i < shard.size(); i++) {
+        long mask = shard.mask(i);
+        if (sharedMask == 0L) {
+          sharedMask = mask;
+        } else if (mask != sharedMask) {
+          return 0L;
+        }
+      }
+    }
+    return sharedMask;
+  }
+
+  private Values valuesOf(MaskStateSet[] frontier) {
+    Set<RecordValue> finalValues = new HashSet<>();
+    for (MaskStateSet shard : frontier) {
+      for (int i = 0; i < shard.size(); i++) {
+        finalValues.add(values.get(shard.valueId(i)));
+      }
+    }
+    return new Values(finalValues, intermediateValues == null ? Collections.emptySet() : intermediateValues);
+  }
+
+  private void expand(MaskStateSet states, int from, int to, StateConsumer consumer) {
+    for (int i = from; i < to; i++) {
+      long used = states.mask(i);
+      int valueId = states.valueId(i);
+      // the operations that may come next are the unused ones starting before the earliest unused one ends
+      long candidates = startingBeforeEndOf[Long.numberOfTrailingZeros(~used)] & ~used & allOperationsMask;
+      if (predecessorMasks != null) {
+        candidates = withPredecessorsUsed(candidates, used);
+      }
+      candidates = reduce(candidates, valueId);
+      while (candidates != 0L) {
+        int operationIndex = Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+        int newValueId = transition(operationIndex, valueId);
+        if (newValueId != INVALID) {
+          consumer.accept(used | (1L << operationIndex), newValueId);
+        }
+      }
+    }
+  }
+
+  private long withPredecessorsUsed(long candidates, long used) {
+    long remaining = candidates;
+    while (remaining != 0L) {
+      int operationIndex = Long.numberOfTrailingZeros(remaining);
+      remaining &= remaining - 1;
+      if ((predecessorMasks[operationIndex] & ~used) != 0L) {
+        candidates &= ~(1L << operationIndex);
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Partial-order reduction: if a read-only candidate can run now, running it first reaches the same final values and
+   * the same intermediate values as any order placing it later, so it is the only candidate worth trying.
+   */
+  private long reduce(long candidates, int valueId) {
+    long readOnlyCandidates = candidates & readOnlyMask;
+    while (readOnlyCandidates != 0L) {
+      int operationIndex = Long.numberOfTrailingZeros(readOnlyCandidates);
+      readOnlyCandidates &= readOnlyCandidates - 1;
+      if (transition(operationIndex, valueId) == valueId) {
+        return 1L << operationIndex;
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Expand the frontier chunk by chunk on the fork-join pool. Each chunk scatters the states it produces into buffers
+   * by state hash, then each hash shard is deduplicated independently, so no set is ever shared between threads.
+   */
+  private MaskStateSet[] expandInParallel(MaskStateSet[] frontier, ExplorationBudget.Tracker budget) {
+    int shardBits = Integer.SIZE - Integer.numberOfLeadingZeros(ForkJoinPool.getCommonPoolParallelism() * 4 - 1);
+    int shardCount = 1 << shardBits;
+
+    List<int[]> chunks = new ArrayList<>();
+    for (int shard = 0; shard < frontier.length; shard++) {
+      for (int from = 0; from < frontier[shard].size(); from += CHUNK_SIZE) {
+        chunks.add(new int[] { shard, from, Math.min(from + CHUNK_SIZE, frontier[shard].size()) });
+      }
+    }
+
+    StateBuffer[][] buffers = new StateBuffer[chunks.size()][shardCount];
+    // the buffered states, duplicates included as they all take memory until the shards are deduplicated
+    AtomicInteger bufferedStates = new AtomicInteger();
+    IntStream.range(0, chunks.size()).parallel().forEach(c -> {
+      budget.checkTime();
+      int[] chunk = chunks.get(c);
+      StateBuffer[] chunkBuffers = buffers[c];
+      for (int shard = 0; shard < shardCount; shard++) {
+        chunkBuffers[shard] = new StateBuffer();
+      }
+      expand(frontier[chunk[0]], chunk[1], chunk[2],
+          (mask, valueId) -> chunkBuffers[MaskStateSet.hash(mask, valueId) >>> (Integer.SIZE - shardBits)].add(mask, valueId));
+      int chunkStates = 0;
+      for (StateBuffer buffer : chunkBuffers) {
+        chunkStates += buffer.size;
+      }
+      budget.onExpansion(bufferedStates.addAndGet(chunkStates));
+    });
+
+    MaskStateSet[] expanded = new MaskStateSet[shardCount];
+    IntStream.range(0, shardCount).parallel().forEach(shard -> {
+      int size = 0;
+      for (StateBuffer[] chunkBuffers : buffers) {
+        size += chunkBuffers[shard].size;
+      }
+      MaskStateSet states = new MaskStateSet(size);
+      for (StateBuffer[] chunkBuffers : buffers) {
+        StateBuffer buffer = chunkBuffers[shard];
+        for (int i = 0; i < buffer.size; i++) {
+          states.add(buffer.masks[i], buffer.valueIds[i]);
+        }
+      }
+      expanded[shard] = states;
+    });
+    return expanded;
+  }
+
+  private int transition(int operationIndex, int valueId) {
+    // racy read of the memo, an outdated row or a missing entry only sends us to the synchronized slow path
+    int[] row = transitions[operationIndex];
+    if (valueId < row.length && row[valueId] != UNEVALUATED) {
+      int transition = row[valueId];
+      return transition == INVALID ? INVALID : transition - 1;
+    }
+    return evaluate(operationIndex, valueId);
+  }
+
+  private synchronized int evaluate(int operationIndex, int valueId) {
+    int[] row = transitions[operationIndex];
+    if (valueId >= row.length) {
+      row = transitions[operationIndex] = Arrays.copyOf(row, Math.max(row.length * 2, valueId + 1));
+    }
+    int transition = row[valueId];
+    if (transition == UNEVALUATED) {
+      Evaluation evaluation = operations[operationIndex].verifyAndReplay(values.get(valueId));
+      if (evaluation.getErrors().isEmpty()) {
+        RecordValue newValue = evaluation.getRecordValue();
+        if (intermediateValues != null) {
+          intermediateValues.add(newValue);
+        }
+        transition = intern(newValue) + 1;
+      } else {
+        transition = INVALID;
+      }
+      row[valueId] = transition;
+    }
+    return transition == INVALID ? INVALID : transition - 1;
+  }
+
+  private int intern(RecordValue value) {
+    Integer id = valueIds.get(value);
+    if (id == null) {
+      id = values.size();
+      values.add(value);
+      valueIds.put(value, id);
+    }
+    return id;
+  }
+
+  private interface StateConsumer {
+    void accept(long mask, int valueId);
+  }
+
+  private static class StateBuffer {
+    private long[] masks = new long[16];
+    private int[] valueIds = new int[16];
+    private int size = 0;
+
+    void add(long mask, int valueId) {
+      if (size == masks.length) {
+        masks = Arrays.copyOf(masks, size * 2);
+        valueIds = Arrays.copyOf(valueIds, size * 2);
+      }
+      masks[size] = mask;
+      valueIds[size++] = valueId;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.BitSet;
+
+/**
+ * The outcome of an exploration that may have stopped at a cut : a point where every possible order has consumed the
+ * very same operations, namely the ones ending first. The values are then the possible values right after those
+ * operations.
+ */
+class CutOutcome {
+  private final BitSet consumedOperations;
+  private final Values values;
+
+  CutOutcome(BitSet consumedOperations, Values values) {
+    this.consumedOperations = consumedOperations;
+    this.values = values;
+  }
+
+  /**
+   * @return the indices, in end TS order, of the operations consumed before the cut, or null if the exploration
+   * went through the whole group.
+   */
+  BitSet getConsumedOperations() {
+    return consumedOperations;
+  }
+
+  Values getValues() {
+    return values;
+  }
+}
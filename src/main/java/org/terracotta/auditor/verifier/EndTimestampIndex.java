@@ -0,0 +1,76 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The end TS of the intervals of a history segment along with their key history. Entries are dropped from the front as the TS
+ * they end at gets too old to be queried.
+ */
+class EndTimestampIndex extends TimestampLog {
+
+  private KeyHistory[] keyHistories = new KeyHistory[16];
+
+  EndTimestampIndex() {
+    super(16);
+  }
+
+  void add(long endTs, KeyHistory keyHistory) {
+    // appending may replace the key history array, so it must happen before the array is read
+    int index = append(endTs);
+    keyHistories[index] = keyHistory;
+  }
+
+  /**
+   * Visit the key history of every entry ending in the range, both bounds included. The same key history is visited
+   * once per entry.
+   */
+  void forEachEndingBetween(long fromTs, long toTs, EntryConsumer consumer) {
+    sort();
+    for (int i = ceiling(fromTs); i < end && timestamps[i] <= toTs; i++) {
+      consumer.accept(timestamps[i], keyHistories[i]);
+    }
+  }
+
+  /**
+   * Drop the entries ending strictly before the TS, handing their key history to the consumer.
+   */
+  void removeBefore(long ts, Consumer<KeyHistory> removed) {
+    sort();
+    int last = ceiling(ts);
+    for (int i = first; i < last; i++) {
+      removed.accept(keyHistories[i]);
+    }
+    Arrays.fill(keyHistories, first, last, null);
+    dropBefore(last);
+  }
+
+  @Override
+  void reorder(int from, int[] sources) {
+    keyHistories = reorder(keyHistories, from, sources);
+  }
+
+  @Override
+  void compact(int capacity) {
+    keyHistories = compact(keyHistories, new KeyHistory[capacity]);
+  }
+
+  interface EntryConsumer {
+    void accept(long endTs, KeyHistory keyHistory);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of the exploration of a single operation group. A group exceeding any of them is not decided : its outcome is
+ * widened to {@link RecordValue#ABSENT} and {@link RecordValue#UNKNOWN_PRESENT} and reported as an
+ * {@link UndecidedGroup} instead of stalling the verification.
+ */
+public class ExplorationBudget {
+
+  public static final ExplorationBudget UNLIMITED = new ExplorationBudget(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+  private final long maxStates;
+  private final int maxFrontier;
+  private final long maxDurationNanos;
+
+  /**
+   * @param maxStates the maximum number of states explored, summed over all the levels and all the head values.
+   * @param maxFrontier the maximum number of states in a single level.
+   * @param maxDuration the maximum time spent replaying the group.
+   * @param unit the unit of maxDuration.
+   */
+  public ExplorationBudget(long maxStates, int maxFrontier, long maxDuration, TimeUnit unit) {
+    if (maxStates <= 0 || maxFrontier <= 0 || maxDuration <= 0) {
+      throw new IllegalArgumentException("Budget limits must be positive");
+    }
+    this.maxStates = maxStates;
+    this.maxFrontier = maxFrontier;
+    this.maxDurationNanos = unit.toNanos(maxDuration);
+  }
+
+  public long getMaxStates() {
+    return maxStates;
+  }
+
+  public int getMaxFrontier() {
+    return maxFrontier;
+  }
+
+  public long getMaxDuration(TimeUnit unit) {
+    return unit.convert(maxDurationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  Tracker start() {
+    return new Tracker();
+  }
+
+  @Override
+  public String toString() {
+    return "ExplorationBudget{maxStates=" + maxStates + ", maxFrontier=" + maxFrontier + ", maxDuration=" + maxDurationNanos + "ns}";
+  }
+
+  /**
+   * The budget left to the group being replayed.
+   */
+  class Tracker {
+    private final long startNanos = System.nanoTime();
+    private long states = 0L;
+
+    /**
+     * Account for a new level of the exploration.
+     */
+    void onLevel(int frontierSize) {
+      states += frontierSize;
+      if (frontierSize > maxFrontier) {
+        throw new BudgetExceededException("frontier of " + frontierSize + " states exceeds " + maxFrontier);
+      }
+      if (states > maxStates) {
+        throw new BudgetExceededException(states + " explored states exceed " + maxStates);
+      }
+      checkTime();
+    }
+
+    /**
+     * Check the frontier being built, which may outgrow the budget long before its level completes.
+     */
+    void onExpansion(int expandedSize) {
+      if (expandedSize > maxFrontier) {
+        throw new BudgetExceededException("frontier of " + expandedSize + " states exceeds " + maxFrontier);
+      }
+      checkTime();
+    }
+
+    void checkTime() {
+      long elapsed = System.nanoTime() - startNanos;
+      if (elapsed > maxDurationNanos) {
+        throw new BudgetExceededException("exploration ran for " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+      }
+    }
+
+    long getStates() {
+      return states;
+    }
+  }
+
+  static class BudgetExceededException extends RuntimeException {
+    BudgetExceededException(String reason) {
+      super(reason, null, false, false);
+    }
+  }
+}
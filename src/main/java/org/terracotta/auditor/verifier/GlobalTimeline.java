@@ -19,23 +19,78 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class GlobalTimeline {
+public class GlobalTimeline implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(GlobalTimeline.class);
+  // the most ready non-key operations verified concurrently in a single step
+  private static final int MAX_NON_KEY_BATCH = 1024;
+  // the groups a partition replays at once, handing them one by one to its worker would cost more than most replays
+  private static final int REPLAY_BATCH_SIZE = 256;
 
   private final int maxSize;
-  private final Map<String, KeyTimeline> timelineMap = new HashMap<>();
-  private final List<NonKeyOperation> nonKeyOperations = new ArrayList<>();
-  private boolean nonKeyOperationsSorted = false;
-  private final SorHistory sorHistory = new SorHistory();
+  private final KeyPartition[] partitions;
+  private final ExecutorService nonKeyExecutor;
+  // the errors found by the partition workers, not reported yet
+  private final Queue<String> replayErrors = new ConcurrentLinkedQueue<>();
+  // pending non-key operations, verified in end TS order as soon as no pending key operation can overlap them
+  private final PriorityQueue<NonKeyOperation> nonKeyOperations = new PriorityQueue<>(Comparator.comparingLong(NonKeyOperation::getEndTS).thenComparingLong(NonKeyOperation::getStartTS));
+  // start TS of the pending non-key operations, the history they may query must be kept
+  private final TreeMap<Long, Integer> nonKeyOperationStarts = new TreeMap<>();
+  private long verifiedNonKeyEndTs = Long.MIN_VALUE;
+  private long verifiedNonKeyCount = 0L;
+  private final SorHistory sorHistory;
+  // the partition workers catch up with it when they next write to the history
+  private long lowWatermark = Long.MIN_VALUE;
+  private long timelineCount = 0L;
   private int size = 0;
 
   public GlobalTimeline(int maxSize) {
+    this(maxSize, new VerifierConfiguration());
+  }
+
+  public GlobalTimeline(int maxSize, VerifierConfiguration configuration) {
     this.maxSize = maxSize;
+    int parallelism = configuration.getParallelism();
+    this.sorHistory = new SorHistory(parallelism, configuration.isKeyOnly());
+    this.partitions = new KeyPartition[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      ExecutorService worker = null;
+      if (parallelism > 1) {
+        String threadName = "verifier-partition-" + (i + 1);
+        worker = Executors.newSingleThreadExecutor(r -> {
+          Thread thread = new Thread(r, threadName);
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      partitions[i] = new KeyPartition(i, configuration, worker);
+    }
+    int nonKeyParallelism = configuration.getNonKeyParallelism();
+    if (nonKeyParallelism > 1) {
+      AtomicInteger threadCounter = new AtomicInteger();
+      this.nonKeyExecutor = Executors.newFixedThreadPool(nonKeyParallelism, r -> {
+        Thread thread = new Thread(r, "verifier-non-key-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.nonKeyExecutor = null;
+    }
   }
 
   public void add(Operation operation) {
@@ -47,24 +102,30 @@ public class GlobalTimeline {
   }
 
   private void add(NonKeyOperation operation) {
+    if (sorHistory.isKeyOnly()) {
+      throw new IllegalStateException("Key-only verification cannot verify " + operation);
+    }
+    if (operation.getStartTS() < lowWatermark) {
+      // if this happens, the history is too short
+      throw new IllegalStateException("History too short for such unordered gap at " + operation.getName() +
+          " startTS=" + operation.getStartTS() + " - history kept from TS=" + lowWatermark);
+    }
     nonKeyOperations.add(operation);
+    nonKeyOperationStarts.merge(operation.getStartTS(), 1, Integer::sum);
     size++;
-    nonKeyOperationsSorted = false;
   }
 
   private void add(KeyOperation operation) {
     if (remainingCapacity() == 0) {
       throw new IllegalStateException("Timeline full with " + maxSize + " operations");
     }
-    String key = operation.getKey();
-    KeyTimeline timeline = timelineMap.get(key);
-    if (timeline == null) {
-      timeline = new KeyTimeline(operation);
-      timelineMap.put(operation.getKey(), timeline);
-    } else {
-      timeline.add(operation);
+    if (operation.getStartTS() <= verifiedNonKeyEndTs) {
+      // if this happens, the history is too short
+      throw new IllegalStateException("History too short for such unordered gap at " + operation.getName() + "#" + operation.getKey() +
+          " startTS=" + operation.getStartTS() + " - non-key operations were verified up to TS=" + verifiedNonKeyEndTs);
     }
-
+    // partitions and history segments are split the same way, so each partition only ever touches its own segment
+    partitions[sorHistory.segmentIndexOf(operation.getKey())].add(operation);
     size++;
   }
 
@@ -81,64 +142,411 @@ public class GlobalTimeline {
       throw new IllegalStateException("Timeline is empty");
     }
 
-    // first check if some n-key operation can execute
-    if (onlyNonKeyOperationsRemain()) {
-      if (!nonKeyOperationsSorted) {
-        LOGGER.debug("CRUD verification done, now processing multi-key");
-        nonKeyOperations.sort(Utils.operationComparator());
-        nonKeyOperationsSorted = true;
-      }
+    try {
+      stepOperations();
+    } catch (VerificationException e) {
+      throw withReplayErrors(e);
+    }
+    if (size == 0) {
+      // the replays still running must be reported before the timeline is seen empty
+      awaitReplays();
+    }
+    if (!replayErrors.isEmpty()) {
+      throw withReplayErrors(null);
+    }
+  }
 
-      NonKeyOperation nonKeyOperation = nonKeyOperations.remove(0);
-      if (nonKeyOperations.size() % 1000 == 0) {
-        LOGGER.debug("nonKeyOperations left : " + nonKeyOperations.size() + " - " + sorHistory.averages());
+  private void stepOperations() throws VerificationException {
+    // first check if some non-key operation can execute
+    NonKeyOperation nonKeyOperation = nonKeyOperations.peek();
+    long pendingKeyOperationsStartTs = pendingKeyOperationsStartTs();
+    if (nonKeyOperation != null && nonKeyOperation.getEndTS() < pendingKeyOperationsStartTs) {
+      awaitReplays();
+      if (nonKeyExecutor != null && !nonKeyOperation.canMutate()) {
+        verifyReadOnlyNonKeyOperations(pendingKeyOperationsStartTs);
+      } else {
+        pollNonKeyOperation();
+        String error = nonKeyOperation.verifyAndReplay(sorHistory);
+        advanceLowWatermark();
+        if (error != null) {
+          throw new VerificationException(error, null);
+        }
       }
-      String error = nonKeyOperation.verifyAndReplay(sorHistory);
-      size--;
-      if (!nonKeyOperations.isEmpty()) {
-        sorHistory.deleteUntil(nonKeyOperations.get(0).getStartTS());
+      return;
+    }
+
+    try {
+      stepKeyOperations();
+    } finally {
+      advanceLowWatermark();
+    }
+  }
+
+  private void pollNonKeyOperation() {
+    NonKeyOperation nonKeyOperation = nonKeyOperations.poll();
+    nonKeyOperationStarts.compute(nonKeyOperation.getStartTS(), (ts, count) -> count == 1 ? null : count - 1);
+    size--;
+    verifiedNonKeyEndTs = Math.max(verifiedNonKeyEndTs, nonKeyOperation.getEndTS());
+    if (++verifiedNonKeyCount % 1000 == 0) {
+      LOGGER.debug("nonKeyOperations verified : " + verifiedNonKeyCount + " - left : " + nonKeyOperations.size() + " - " + sorHistory.averages());
+    }
+  }
+
+  /**
+   * Verify all the ready non-key operations which cannot mutate the history at once. Nothing writes to the history
+   * until they are all done, so they can query it concurrently.
+   */
+  private void verifyReadOnlyNonKeyOperations(long pendingKeyOperationsStartTs) throws VerificationException {
+    List<NonKeyOperation> batch = new ArrayList<>();
+    while (batch.size() < MAX_NON_KEY_BATCH && !nonKeyOperations.isEmpty()) {
+      NonKeyOperation nonKeyOperation = nonKeyOperations.peek();
+      if (nonKeyOperation.getEndTS() >= pendingKeyOperationsStartTs || nonKeyOperation.canMutate()) {
+        break;
       }
+      pollNonKeyOperation();
+      batch.add(nonKeyOperation);
+    }
+    // report errors in a deterministic order, whatever the order the operations were ready in
+    batch.sort(Utils.operationComparator().thenComparingLong(Operation::getEndTS));
 
-      if (error != null) {
-        throw new VerificationException(error, null);
+    List<Callable<String>> verifications = new ArrayList<>(batch.size());
+    for (NonKeyOperation nonKeyOperation : batch) {
+      verifications.add(() -> nonKeyOperation.verifyAndReplay(sorHistory));
+    }
+    List<String> errors = new ArrayList<>();
+    try {
+      for (Future<String> future : nonKeyExecutor.invokeAll(verifications)) {
+        String error = future.get();
+        if (error != null) {
+          errors.add(error);
+        }
       }
-      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      advanceLowWatermark();
     }
 
-    KeyTimeline bestTimeline = null;
+    if (!errors.isEmpty()) {
+      throw new VerificationException(errors);
+    }
+  }
 
-    // look for the timeline with the most ops in it
-    for (KeyTimeline timeline : timelineMap.values()) {
-      if (!timeline.isEmpty()) {
-        if (bestTimeline == null) {
-          bestTimeline = timeline;
-        } else if (timeline.size() > bestTimeline.size()) {
-          bestTimeline = timeline;
-        }
+  private void stepKeyOperations() throws VerificationException {
+    // the timelines are picked across all partitions as if there was a single one, only their replay is concurrent
+    KeyPartition bestPartition = null;
+    KeyTimeline bestTimeline = null;
+    for (KeyPartition partition : partitions) {
+      KeyTimeline timeline = partition.schedule.peek();
+      if (timeline != null && (bestTimeline == null || partition.schedule.compare(timeline, bestTimeline) < 0)) {
+        bestPartition = partition;
+        bestTimeline = timeline;
       }
     }
 
     if (bestTimeline == null) {
-      throw new RuntimeException("Step failed to execute anything, next remaining non-key operation ends TS = " + nonKeyOperations.get(0).getEndTS());
+      throw new RuntimeException("Step failed to execute anything, next remaining non-key operation ends TS = " + nonKeyOperations.peek().getEndTS());
     }
 
+    int keyOperationCount = bestPartition.keyOperationCount;
     try {
-      StepResult step = bestTimeline.step(sorHistory.getHeadOf(bestTimeline.getKey()));
-      size -= step.getStepSize();
-      sorHistory.add(bestTimeline.getKey(), step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
-    } catch (VerificationException ve) {
-      StepResult step = ve.getStepResult();
-      size -= step.getStepSize();
-      sorHistory.add(bestTimeline.getKey(), step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
-      throw ve;
+      bestPartition.step(bestTimeline);
+    } finally {
+      size -= keyOperationCount - bestPartition.keyOperationCount;
+    }
+  }
+
+  /**
+   * Wait until the partitions replayed all the groups stepped so far, the whole history can then be read and written
+   * from this thread.
+   */
+  private void awaitReplays() {
+    for (KeyPartition partition : partitions) {
+      partition.awaitReplays();
     }
+    if (lowWatermark != Long.MIN_VALUE) {
+      sorHistory.advanceLowWatermark(lowWatermark);
+    }
+  }
+
+  /**
+   * @return an exception reporting the errors of the step, if any, along with the errors the partition workers found.
+   */
+  private VerificationException withReplayErrors(VerificationException stepException) {
+    if (replayErrors.isEmpty()) {
+      return stepException;
+    }
+    List<String> errors = new ArrayList<>();
+    if (stepException != null) {
+      errors.addAll(stepException.getMessages());
+    }
+    for (String error = replayErrors.poll(); error != null; error = replayErrors.poll()) {
+      errors.add(error);
+    }
+    return new VerificationException(errors);
+  }
+
+  /**
+   * @return the earliest start TS of all the pending key operations, or Long.MAX_VALUE if there are none.
+   */
+  private long pendingKeyOperationsStartTs() {
+    long startTs = Long.MAX_VALUE;
+    for (KeyPartition partition : partitions) {
+      if (!partition.headStarts.isEmpty()) {
+        startTs = Math.min(startTs, partition.headStarts.firstKey());
+      }
+    }
+    return startTs;
   }
 
-  private boolean onlyNonKeyOperationsRemain() {
-    return nonKeyOperations.size() == size;
+  /**
+   * The pending non-key operations may query the history from their start TS. Operations still to come are expected
+   * to start after the pending key operations, as key timelines already expect, so nothing earlier is needed. The
+   * groups stepped but not replayed yet are written before the watermark moves in their history segment.
+   */
+  private void advanceLowWatermark() {
+    long watermark = pendingKeyOperationsStartTs();
+    if (!nonKeyOperationStarts.isEmpty()) {
+      watermark = Math.min(watermark, nonKeyOperationStarts.firstKey());
+    }
+    if (watermark != Long.MAX_VALUE && watermark > lowWatermark) {
+      lowWatermark = watermark;
+      if (partitions.length == 1) {
+        sorHistory.advanceLowWatermark(watermark);
+      }
+    }
   }
 
   Map<String, Set<RecordValue>> getResults() {
+    awaitReplays();
     return sorHistory.getHeads();
   }
+
+  /**
+   * @return the groups which could not be decided within the exploration budget, ordered by start TS.
+   */
+  List<UndecidedGroup> getUndecidedGroups() {
+    awaitReplays();
+    List<UndecidedGroup> undecidedGroups = new ArrayList<>();
+    for (KeyPartition partition : partitions) {
+      undecidedGroups.addAll(partition.replayer.getUndecidedGroups());
+    }
+    undecidedGroups.sort(Comparator.comparingLong(UndecidedGroup::getStartTs));
+    return undecidedGroups;
+  }
+
+  String replayCacheStats() {
+    awaitReplays();
+    long hits = 0L;
+    long misses = 0L;
+    for (KeyPartition partition : partitions) {
+      hits += partition.replayer.getCacheHits();
+      misses += partition.replayer.getCacheMisses();
+    }
+    return "replay cache hits=" + hits + " misses=" + misses;
+  }
+
+  @Override
+  public void close() {
+    for (KeyPartition partition : partitions) {
+      if (partition.worker != null) {
+        partition.worker.shutdownNow();
+      }
+    }
+    if (nonKeyExecutor != null) {
+      nonKeyExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * The timelines of a slice of the keys. They are scheduled by the verifier thread, but with parallelism the groups
+   * it steps are replayed in batches by a worker thread, which is then the only one writing to the history segment of
+   * the partition.
+   */
+  private class KeyPartition {
+    private final int index;
+    private final Map<String, KeyTimeline> timelineMap = new HashMap<>();
+    private final TimelineHeap schedule;
+    private final GroupReplayer replayer;
+    // start TS of the first group of every non-empty timeline
+    private final TreeMap<Long, Integer> headStarts = new TreeMap<>();
+    private int keyOperationCount = 0;
+    // null to replay the groups right away on the verifier thread
+    private final ExecutorService worker;
+    // groups removed from their timeline, in step order, and not handed to the worker yet
+    private List<Replay> pendingReplays = new ArrayList<>();
+    private Future<?> lastBatch;
+
+    KeyPartition(int index, VerifierConfiguration configuration, ExecutorService worker) {
+      this.index = index;
+      this.schedule = new TimelineHeap(configuration.getSchedulingPolicy());
+      this.replayer = new GroupReplayer(configuration.getExplorationBudget(), configuration.getReplayCacheSize(), !configuration.isKeyOnly());
+      this.worker = worker;
+    }
+
+    void add(KeyOperation operation) {
+      String key = operation.getKey();
+      KeyTimeline timeline = timelineMap.get(key);
+      if (timeline == null) {
+        timeline = new KeyTimeline(operation);
+        timeline.sequence = timelineCount++;
+        timelineMap.put(operation.getKey(), timeline);
+      } else {
+        removeHeadStart(timeline);
+        timeline.add(operation);
+      }
+      addHeadStart(timeline);
+      schedule.update(timeline);
+      keyOperationCount++;
+    }
+
+    void step(KeyTimeline timeline) throws VerificationException {
+      removeHeadStart(timeline);
+      try {
+        // what remains of the timeline does not depend on the replay, with a worker it can happen later
+        KeyOperation operation = timeline.pollLoneOperation();
+        if (operation != null) {
+          keyOperationCount--;
+          if (worker == null) {
+            replay(timeline, operation);
+          } else {
+            enqueue(new Replay(timeline, operation, null));
+          }
+          return;
+        }
+        if (worker != null && timeline.headSize() < KeyTimeline.CUT_THRESHOLD) {
+          KeyOperationGroup operationGroup = timeline.pollHeadGroup();
+          keyOperationCount -= operationGroup.size();
+          enqueue(new Replay(timeline, null, operationGroup));
+          return;
+        }
+
+        // how much of a group cut is stepped depends on its replay, that cannot wait
+        awaitReplays();
+        try {
+          StepResult step = timeline.step(sorHistory.getHeadOf(timeline.getKey()), replayer);
+          keyOperationCount -= step.getStepSize();
+          sorHistory.add(timeline.getKey(), step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
+        } catch (VerificationException ve) {
+          StepResult step = ve.getStepResult();
+          keyOperationCount -= step.getStepSize();
+          sorHistory.add(timeline.getKey(), step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
+          throw ve;
+        }
+      } finally {
+        addHeadStart(timeline);
+        schedule.update(timeline);
+      }
+    }
+
+    private void enqueue(Replay replay) {
+      pendingReplays.add(replay);
+      if (pendingReplays.size() == REPLAY_BATCH_SIZE) {
+        submitReplays();
+      }
+    }
+
+    private void submitReplays() {
+      if (pendingReplays.isEmpty()) {
+        return;
+      }
+      List<Replay> replays = pendingReplays;
+      long watermark = lowWatermark;
+      pendingReplays = new ArrayList<>();
+      lastBatch = worker.submit(() -> {
+        for (Replay replay : replays) {
+          replay.run();
+        }
+        sorHistory.advanceLowWatermark(index, watermark);
+      });
+    }
+
+    /**
+     * Wait until the worker replayed every group stepped so far.
+     */
+    void awaitReplays() {
+      if (worker == null) {
+        return;
+      }
+      submitReplays();
+      if (lastBatch == null) {
+        return;
+      }
+      try {
+        lastBatch.get();
+        lastBatch = null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    private void addHeadStart(KeyTimeline timeline) {
+      if (!timeline.isEmpty()) {
+        headStarts.merge(timeline.headStartTS(), 1, Integer::sum);
+      }
+    }
+
+    private void removeHeadStart(KeyTimeline timeline) {
+      if (!timeline.isEmpty()) {
+        headStarts.compute(timeline.headStartTS(), (ts, count) -> count == 1 ? null : count - 1);
+      }
+    }
+
+    /**
+     * Replay a lone operation and write its outcome straight to the history.
+     */
+    private void replay(KeyTimeline timeline, KeyOperation operation) throws VerificationException {
+      String key = timeline.getKey();
+      Set<RecordValue> newPossibleValues;
+      try {
+        newPossibleValues = timeline.replay(operation, sorHistory.getHeadOf(key));
+      } catch (VerificationException ve) {
+        StepResult step = ve.getStepResult();
+        sorHistory.add(key, step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
+        throw ve;
+      }
+      sorHistory.add(key, operation.getStartTS(), operation.getEndTS(), newPossibleValues, newPossibleValues);
+    }
+
+    /**
+     * A lone operation or a group stepped but not replayed yet.
+     */
+    private class Replay {
+      private final KeyTimeline timeline;
+      private final KeyOperation operation;
+      private final KeyOperationGroup operationGroup;
+
+      Replay(KeyTimeline timeline, KeyOperation operation, KeyOperationGroup operationGroup) {
+        this.timeline = timeline;
+        this.operation = operation;
+        this.operationGroup = operationGroup;
+      }
+
+      void run() {
+        String key = timeline.getKey();
+        if (operation != null) {
+          try {
+            replay(timeline, operation);
+          } catch (VerificationException ve) {
+            replayErrors.add(ve.getMessage());
+          }
+          return;
+        }
+        StepResult step;
+        try {
+          step = timeline.replay(operationGroup, sorHistory.getHeadOf(key), replayer);
+        } catch (VerificationException ve) {
+          step = ve.getStepResult();
+          replayErrors.add(ve.getMessage());
+        }
+        sorHistory.add(key, step.getStartTs(), step.getEndTs(), step.getPossibleValues(), step.getIntermediateValues());
+      }
+    }
+  }
 }
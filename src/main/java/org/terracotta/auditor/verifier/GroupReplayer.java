@@ -0,0 +1,110 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replays operation groups within an {@link ExplorationBudget}. Not thread safe, each key partition has its own.
+ */
+class GroupReplayer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(GroupReplayer.class);
+
+  private final ExplorationBudget budget;
+  private final ReplayCache cache;
+  private final boolean trackIntermediateValues;
+  private final List<UndecidedGroup> undecidedGroups = new ArrayList<>();
+
+  GroupReplayer(ExplorationBudget budget) {
+    this(budget, 0);
+  }
+
+  GroupReplayer(ExplorationBudget budget, int cacheSize) {
+    this(budget, cacheSize, true);
+  }
+
+  /**
+   * @param trackIntermediateValues false if the values a key goes through within a group are never queried, the
+   *                                outcomes then only hold the values the group may leave the key with.
+   */
+  GroupReplayer(ExplorationBudget budget, int cacheSize, boolean trackIntermediateValues) {
+    this.budget = budget;
+    this.cache = cacheSize > 0 ? new ReplayCache(cacheSize) : null;
+    this.trackIntermediateValues = trackIntermediateValues;
+  }
+
+  Values replay(String key, KeyOperationGroup operationGroup, Set<RecordValue> possibleValuesAtHead) {
+    if (operationGroup.isSequential()) {
+      return operationGroup.replaySequentially(possibleValuesAtHead, trackIntermediateValues);
+    }
+
+    ExplorationBudget.Tracker tracker = budget.start();
+    try {
+      if (cache == null) {
+        return operationGroup.replay(possibleValuesAtHead, tracker, trackIntermediateValues);
+      }
+      ReplayCache.Shape shape = new ReplayCache.Shape(operationGroup.getOperationsByEnd());
+      Values values = cache.get(shape, possibleValuesAtHead);
+      if (values == null) {
+        values = operationGroup.replay(possibleValuesAtHead, tracker, trackIntermediateValues);
+        cache.put(shape, possibleValuesAtHead, values);
+      }
+      return values;
+    } catch (ExplorationBudget.BudgetExceededException e) {
+      return undecided(key, operationGroup, tracker, e);
+    }
+  }
+
+  /**
+   * Replay a large group only up to its first cut consuming at least half of its operations, if there is one.
+   */
+  CutOutcome replayUntilCut(String key, KeyOperationGroup operationGroup, Set<RecordValue> possibleValuesAtHead) {
+    ExplorationBudget.Tracker tracker = budget.start();
+    try {
+      return operationGroup.replayUntilCut(possibleValuesAtHead, operationGroup.size() / 2, tracker, trackIntermediateValues);
+    } catch (ExplorationBudget.BudgetExceededException e) {
+      return new CutOutcome(null, undecided(key, operationGroup, tracker, e));
+    }
+  }
+
+  private Values undecided(String key, KeyOperationGroup operationGroup, ExplorationBudget.Tracker tracker, ExplorationBudget.BudgetExceededException e) {
+    UndecidedGroup undecidedGroup = new UndecidedGroup(key, operationGroup.startTS(), operationGroup.endTS(),
+        operationGroup.size(), tracker.getStates(), e.getMessage());
+    LOGGER.warn("{}", undecidedGroup);
+    undecidedGroups.add(undecidedGroup);
+    Set<RecordValue> widened = new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+    return new Values(widened, new HashSet<>(widened));
+  }
+
+  List<UndecidedGroup> getUndecidedGroups() {
+    return undecidedGroups;
+  }
+
+  long getCacheHits() {
+    return cache == null ? 0L : cache.getHits();
+  }
+
+  long getCacheMisses() {
+    return cache == null ? 0L : cache.getMisses();
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The history of a slice of the keys of a {@link SorHistory}. A segment is never written to concurrently: it is either
+ * written to by the single thread stepping its keys, or read from, possibly by several threads, while those steps are
+ * paused.
+ */
+class HistorySegment {
+
+  private static final Set<RecordValue> ABSENT = Collections.singleton(RecordValue.ABSENT);
+  private static final Set<RecordValue> UNKNOWN_PRESENT = Collections.singleton(RecordValue.UNKNOWN_PRESENT);
+  private static final Set<RecordValue> ABSENT_OR_UNKNOWN_PRESENT = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT)));
+
+  private int committedMax = 0;
+  private int intermediateMax = 0;
+  // query statistics, updated by concurrent readers
+  private final LongAdder atCount = new LongAdder();
+  private final LongAdder atSum = new LongAdder();
+  private final LongAdder overlappingCount = new LongAdder();
+  private final LongAdder overlappingSum = new LongAdder();
+
+  private final boolean keyOnly;
+  private final Map<String, KeyHistory> history = new HashMap<>();
+  // the key histories of the intervals by end TS, so that time range queries only visit the intervals near the range
+  private final EndTimestampIndex endTimestampIndex = new EndTimestampIndex();
+  // the longest interval ever added, which bounds how long after a range an interval overlapping it can end
+  private long maxIntervalLength = 0;
+  // changes of the definitely and possibly present key counts, indexed by the TS after which they apply
+  private final PresenceLog presenceLog = new PresenceLog();
+  // the changes made before the low watermark, which apply to any query
+  private int definitelyPresentBase = 0;
+  private int possiblyPresentBase = 0;
+  // no query is made before that TS, so the history before it only has to hold the values at that TS
+  private long lowWatermark = Long.MIN_VALUE;
+
+  HistorySegment() {
+    this(false);
+  }
+
+  /**
+   * @param keyOnly true to only keep the head of every key, time queries then cannot be answered.
+   */
+  HistorySegment(boolean keyOnly) {
+    this.keyOnly = keyOnly;
+  }
+
+  void add(String key, long beforeTs, long afterTs, Set<RecordValue> committedValues, Set<RecordValue> intermediateValues) {
+    KeyHistory keyHistory = history.computeIfAbsent(key, KeyHistory::new);
+    Set<RecordValue> committed = share(committedValues);
+    if (keyOnly) {
+      // the head is the interval ending last
+      if (keyHistory.size() == 0) {
+        keyHistory.add(beforeTs, afterTs, committed, Collections.emptySet());
+      } else if (afterTs >= keyHistory.getEndTs(0)) {
+        keyHistory.replaceOnly(beforeTs, afterTs, committed, Collections.emptySet());
+      }
+    } else {
+      addInterval(key, keyHistory, beforeTs, afterTs, committed, intermediateValues);
+    }
+
+    if (committedValues.size() > committedMax) {
+      committedMax = committedValues.size();
+    }
+    if (intermediateValues.size() > intermediateMax) {
+      intermediateMax = intermediateValues.size();
+    }
+  }
+
+  private void addInterval(String key, KeyHistory keyHistory, long beforeTs, long afterTs, Set<RecordValue> committed, Set<RecordValue> intermediateValues) {
+    Set<RecordValue> intermediate = intermediateValues.equals(committed) ? committed : share(intermediateValues);
+
+    int index = keyHistory.ceilingIndex(afterTs);
+    Set<RecordValue> previousValues;
+    if (index < keyHistory.size() && keyHistory.getEndTs(index) == afterTs) {
+      previousValues = keyHistory.getCommittedValues(index);
+      keyHistory.set(index, beforeTs, committed, intermediate);
+    } else {
+      previousValues = index > 0 ? keyHistory.getCommittedValues(index - 1) : Collections.emptySet();
+      keyHistory.add(beforeTs, afterTs, committed, intermediate);
+      endTimestampIndex.add(afterTs, keyHistory);
+    }
+    updatePresence(keyHistory, index, previousValues);
+    maxIntervalLength = Math.max(maxIntervalLength, afterTs - beforeTs);
+  }
+
+  /**
+   * @return a single shared instance of the value sets made of the ABSENT and UNKNOWN_PRESENT constants only, which
+   * most of the history is made of.
+   */
+  private static Set<RecordValue> share(Set<RecordValue> values) {
+    if (values.size() == 1) {
+      RecordValue value = values.iterator().next();
+      if (value == RecordValue.ABSENT) {
+        return ABSENT;
+      } else if (value == RecordValue.UNKNOWN_PRESENT) {
+        return UNKNOWN_PRESENT;
+      }
+    } else if (values.size() == 2 && values.contains(RecordValue.ABSENT) && values.contains(RecordValue.UNKNOWN_PRESENT)) {
+      return ABSENT_OR_UNKNOWN_PRESENT;
+    }
+    return values;
+  }
+
+  private void updatePresence(KeyHistory keyHistory, int index, Set<RecordValue> previousValues) {
+    Set<RecordValue> committedValues = keyHistory.getCommittedValues(index);
+    int definitelyDelta = definitelyPresent(committedValues) - definitelyPresent(previousValues);
+    int possiblyDelta = possiblyPresent(committedValues) - possiblyPresent(previousValues);
+    if (definitelyDelta == 0 && possiblyDelta == 0) {
+      return;
+    }
+    addPresenceDelta(keyHistory.getEndTs(index), definitelyDelta, possiblyDelta);
+    // the next interval of the key used to change the counts from the previous values, not from the new ones
+    if (index + 1 < keyHistory.size()) {
+      addPresenceDelta(keyHistory.getEndTs(index + 1), -definitelyDelta, -possiblyDelta);
+    }
+  }
+
+  private void addPresenceDelta(long ts, int definitelyDelta, int possiblyDelta) {
+    if (ts < lowWatermark) {
+      definitelyPresentBase += definitelyDelta;
+      possiblyPresentBase += possiblyDelta;
+      return;
+    }
+    presenceLog.add(ts, definitelyDelta, possiblyDelta);
+  }
+
+  private static int definitelyPresent(Set<RecordValue> values) {
+    if (values.isEmpty()) {
+      return 0;
+    }
+    for (RecordValue value : values) {
+      if (value.isAbsent()) {
+        return 0;
+      }
+    }
+    return 1;
+  }
+
+  private static int possiblyPresent(Set<RecordValue> values) {
+    for (RecordValue value : values) {
+      if (!value.isAbsent()) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the number of keys definitely and possibly present according to the values committed before the TS.
+   */
+  PresentKeyCount getPresentKeyCountAt(long ts) {
+    return new PresentKeyCount(definitelyPresentBase + presenceLog.getDefinitelyPresentAt(ts), possiblyPresentBase + presenceLog.getPossiblyPresentAt(ts));
+  }
+
+  Set<RecordValue> getHeadOf(String key) {
+    KeyHistory keyHistory = history.get(key);
+    if (keyHistory == null) {
+      return ABSENT;
+    }
+    return keyHistory.getCommittedValues(keyHistory.size() - 1);
+  }
+
+  void collectHeads(Map<String, Set<RecordValue>> result) {
+    for (KeyHistory keyHistory : history.values()) {
+      result.put(keyHistory.getKey(), keyHistory.getCommittedValues(keyHistory.size() - 1));
+    }
+  }
+
+  /**
+   * Declare that no query will be made before the TS anymore: the count changes applying before it are folded and the
+   * intervals superseded by another one ending before it are deleted. The cost is proportional to what expires.
+   */
+  void advanceLowWatermark(long ts) {
+    if (ts <= lowWatermark) {
+      return;
+    }
+    lowWatermark = ts;
+
+    presenceLog.removeBefore(ts);
+
+    // range queries start at the low watermark at the earliest, the intervals ending before it cannot overlap them;
+    // sweeping their entries also visits every key having intervals to delete, as they end before such an entry
+    endTimestampIndex.removeBefore(ts, keyHistory -> {
+      // the last interval ending before the TS is kept, as it holds the values at the TS
+      int lastBefore = keyHistory.lowerIndex(ts);
+      if (lastBefore > 0) {
+        keyHistory.removeBefore(lastBefore);
+      }
+    });
+  }
+
+  long getLowWatermark() {
+    return lowWatermark;
+  }
+
+  Map<String, Set<RecordValue>> getAt(long ts) {
+    Map<String, Set<RecordValue>> at = new HashMap<>();
+    for (KeyHistory keyHistory : history.values()) {
+      Set<RecordValue> values = committedBefore(keyHistory, ts);
+      if (values != null) {
+        at.put(keyHistory.getKey(), values);
+      }
+    }
+    atCount.increment();
+    atSum.add(history.size());
+    return at;
+  }
+
+  /**
+   * Same as {@link #getAt(long)}, but only looking at the given keys, which must belong to this segment.
+   */
+  Map<String, Set<RecordValue>> getAt(long ts, Collection<String> keys) {
+    Map<String, Set<RecordValue>> at = new HashMap<>();
+    for (String key : keys) {
+      KeyHistory keyHistory = history.get(key);
+      Set<RecordValue> values = keyHistory == null ? null : committedBefore(keyHistory, ts);
+      if (values != null) {
+        at.put(key, values);
+      }
+    }
+    atCount.increment();
+    atSum.add(keys.size());
+    return at;
+  }
+
+  /**
+   * @return the values committed before the TS, or null if there are none or if the key was absent.
+   */
+  private static Set<RecordValue> committedBefore(KeyHistory keyHistory, long ts) {
+    int before = keyHistory.lowerIndex(ts);
+    if (before < 0) {
+      return null;
+    }
+    Set<RecordValue> values = keyHistory.getCommittedValues(before);
+    if (values.size() == 1 && values.iterator().next().isAbsent()) {
+      return null;
+    }
+    return values;
+  }
+
+  Map<String, Set<RecordValue>> getEverythingOverlapping(long startTs, long afterTs) {
+    Map<String, Set<RecordValue>> overlapping = new HashMap<>();
+
+    // an interval starting at or before the range end cannot end later than the longest interval allows
+    long lastEndTs = afterTs > Long.MAX_VALUE - maxIntervalLength ? Long.MAX_VALUE : afterTs + maxIntervalLength;
+    int[] counter = { 0 };
+    endTimestampIndex.forEachEndingBetween(startTs, lastEndTs, (endTs, keyHistory) -> {
+      counter[0]++;
+      int index = keyHistory.ceilingIndex(endTs);
+      if (keyHistory.getStartTs(index) > afterTs) {
+        return;
+      }
+      // the stored sets are shared with the history, the union must be built in a copy
+      overlapping.computeIfAbsent(keyHistory.getKey(), k -> new HashSet<>()).addAll(keyHistory.getIntermediateValues(index));
+    });
+    overlappingCount.increment();
+    overlappingSum.add(counter[0]);
+
+    return overlapping;
+  }
+
+  /**
+   * Same as {@link #getEverythingOverlapping(long, long)}, but only looking at the given keys, which must belong to this
+   * segment.
+   */
+  Map<String, Set<RecordValue>> getEverythingOverlapping(long startTs, long afterTs, Collection<String> keys) {
+    Map<String, Set<RecordValue>> overlapping = new HashMap<>();
+    int counter = 0;
+    for (String key : keys) {
+      KeyHistory keyHistory = history.get(key);
+      if (keyHistory == null) {
+        continue;
+      }
+      // the intervals of a key are disjoint, so the ones ending in or after the range are also sorted by start
+      for (int i = keyHistory.ceilingIndex(startTs); i < keyHistory.size(); i++) {
+        counter++;
+        if (keyHistory.getStartTs(i) > afterTs) {
+          break;
+        }
+        // the stored sets are shared with the history, the union must be built in a copy
+        overlapping.computeIfAbsent(key, k -> new HashSet<>()).addAll(keyHistory.getIntermediateValues(i));
+      }
+    }
+    overlappingCount.increment();
+    overlappingSum.add(counter);
+    return overlapping;
+  }
+
+  int getCommittedMax() {
+    return committedMax;
+  }
+
+  int getIntermediateMax() {
+    return intermediateMax;
+  }
+
+  long getAtCount() {
+    return atCount.sum();
+  }
+
+  long getAtSum() {
+    return atSum.sum();
+  }
+
+  long getOverlappingCount() {
+    return overlappingCount.sum();
+  }
+
+  long getOverlappingSum() {
+    return overlappingSum.sum();
+  }
+}
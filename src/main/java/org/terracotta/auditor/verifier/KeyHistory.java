@@ -0,0 +1,125 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The history of a single key, as columns sorted by end TS. Intervals are almost always added in end TS order and only
+ * ever trimmed from the front, so the columns are plain arrays rather than a tree. Unlike the other logs, an interval
+ * added out of order is sorted in right away. Indices are relative to the first live interval.
+ */
+class KeyHistory extends TimestampLog {
+
+  private final String key;
+  private long[] startTimestamps = new long[2];
+  private Object[] committedValues = new Object[2];
+  private Object[] intermediateValues = new Object[2];
+
+  KeyHistory(String key) {
+    super(2);
+    this.key = key;
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  long getStartTs(int index) {
+    return startTimestamps[first + index];
+  }
+
+  long getEndTs(int index) {
+    return timestamps[first + index];
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<RecordValue> getCommittedValues(int index) {
+    return (Set<RecordValue>) committedValues[first + index];
+  }
+
+  @SuppressWarnings("unchecked")
+  Set<RecordValue> getIntermediateValues(int index) {
+    return (Set<RecordValue>) intermediateValues[first + index];
+  }
+
+  /**
+   * @return the index of the first interval ending at or after the TS, or the size if there is none.
+   */
+  int ceilingIndex(long ts) {
+    return ceiling(ts) - first;
+  }
+
+  /**
+   * @return the index of the last interval ending strictly before the TS, or -1 if there is none.
+   */
+  int lowerIndex(long ts) {
+    return ceilingIndex(ts) - 1;
+  }
+
+  void set(int index, long startTs, Set<RecordValue> committed, Set<RecordValue> intermediate) {
+    int i = first + index;
+    startTimestamps[i] = startTs;
+    committedValues[i] = committed;
+    intermediateValues[i] = intermediate;
+  }
+
+  /**
+   * Add an interval ending at a TS no other interval ends at. It ends up at the {@link #ceilingIndex(long)} of its end.
+   */
+  void add(long startTs, long endTs, Set<RecordValue> committed, Set<RecordValue> intermediate) {
+    // appending may replace the columns, so it must happen before they are written
+    int i = append(endTs);
+    startTimestamps[i] = startTs;
+    committedValues[i] = committed;
+    intermediateValues[i] = intermediate;
+    if (sortedEnd < end) {
+      sort();
+    }
+  }
+
+  /**
+   * Replace the only interval of the history, which then stays sorted whatever its end TS.
+   */
+  void replaceOnly(long startTs, long endTs, Set<RecordValue> committed, Set<RecordValue> intermediate) {
+    timestamps[first] = endTs;
+    set(0, startTs, committed, intermediate);
+  }
+
+  /**
+   * Drop the intervals before the given index.
+   */
+  void removeBefore(int index) {
+    Arrays.fill(committedValues, first, first + index, null);
+    Arrays.fill(intermediateValues, first, first + index, null);
+    dropBefore(first + index);
+  }
+
+  @Override
+  void reorder(int from, int[] sources) {
+    startTimestamps = reorder(startTimestamps, from, sources);
+    committedValues = reorder(committedValues, from, sources);
+    intermediateValues = reorder(intermediateValues, from, sources);
+  }
+
+  @Override
+  void compact(int capacity) {
+    startTimestamps = compact(startTimestamps, new long[capacity]);
+    committedValues = compact(committedValues, new Object[capacity]);
+    intermediateValues = compact(intermediateValues, new Object[capacity]);
+  }
+}
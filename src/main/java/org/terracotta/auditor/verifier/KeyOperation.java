@@ -20,7 +20,11 @@ public abstract class KeyOperation extends Operation {
   private final String key;
 
   protected KeyOperation(String name, long startTS, long endTS, String key, String result) {
-    super(name, startTS, endTS, result);
+    this(name, startTS, endTS, key, result, null);
+  }
+
+  protected KeyOperation(String name, long startTS, long endTS, String key, String result, String sessionId) {
+    super(name, startTS, endTS, result, sessionId);
     this.key = key;
   }
 
@@ -30,6 +34,34 @@ public abstract class KeyOperation extends Operation {
 
   public abstract Evaluation verifyAndReplay(RecordValue fromValue);
 
+  /**
+   * Tell if replaying this operation can change the record value. An operation returning false must leave the value
+   * untouched whenever it replays without error, e.g.: a failed add or a read. The order of such operations relative
+   * to each other then does not need to be enumerated.
+   * @return true unless this operation is known to be read-only, which is always safe.
+   */
+  public boolean canMutate() {
+    return true;
+  }
+
+  /**
+   * Tell if the system of record provided the version of the record this operation observed or produced.
+   * @return true if {@link #getVersion()} can be used.
+   */
+  public boolean hasVersion() {
+    return false;
+  }
+
+  /**
+   * Expose the version of the record this operation observed or produced. Versions must increase with each write, so
+   * that an operation with a lower version is always ordered before one with a higher version. Operations with equal
+   * versions, or without one, are ordered by exploring their interleavings. Any long is a valid version.
+   * @return the version, only meaningful if {@link #hasVersion()}.
+   */
+  public long getVersion() {
+    return 0L;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName() + "@" + key + " startTs=" + getStartTS() + " endsTS=" + getEndTS() + " result=" + getResult();
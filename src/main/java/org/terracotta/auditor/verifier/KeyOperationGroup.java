@@ -16,42 +16,236 @@
 package org.terracotta.auditor.verifier;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class KeyOperationGroup {
 
-  private final List<KeyOperation> sortedOperations = new ArrayList<>();
+  // operations sorted by end TS, kept sorted by binary insertion so that replaying never has to sort them again
+  private KeyOperation[] operationsByEnd = new KeyOperation[4];
+  private long[] endTimestamps = new long[4];
+  private int size = 0;
   private long startTS;
   private long endTS;
 
   KeyOperationGroup(KeyOperation operation) {
-    this.sortedOperations.add(operation);
+    this.operationsByEnd[0] = operation;
+    this.endTimestamps[0] = operation.getEndTS();
+    this.size = 1;
     this.startTS = operation.getStartTS();
     this.endTS = operation.getEndTS();
   }
 
+  /**
+   * @return the operations of this group, sorted by start TS.
+   */
   public List<KeyOperation> getOperations() {
-    return sortedOperations;
+    List<KeyOperation> operations = new ArrayList<>(Arrays.asList(operationsByEnd).subList(0, size));
+    operations.sort(Utils.operationComparator());
+    return operations;
+  }
+
+  /**
+   * @return a view of the operations of this group, sorted by end TS.
+   */
+  List<KeyOperation> getOperationsByEnd() {
+    return Arrays.asList(operationsByEnd).subList(0, size);
   }
 
   public void add(KeyOperation operation) {
-    sortedOperations.add(operation);
-    sortedOperations.sort(Utils.operationComparator());
-    if (operation.getEndTS() > endTS) {
-      endTS = operation.getEndTS();
+    long operationEndTS = operation.getEndTS();
+    // insert after the operations ending at the same time to keep insertion order among them
+    int index = upperBound(operationEndTS);
+    ensureCapacity(size + 1);
+    System.arraycopy(operationsByEnd, index, operationsByEnd, index + 1, size - index);
+    System.arraycopy(endTimestamps, index, endTimestamps, index + 1, size - index);
+    operationsByEnd[index] = operation;
+    endTimestamps[index] = operationEndTS;
+    size++;
+    if (operationEndTS > endTS) {
+      endTS = operationEndTS;
     }
     if (operation.getStartTS() < startTS) {
       startTS = operation.getStartTS();
     }
   }
 
+  void merge(KeyOperationGroup other) {
+    KeyOperation[] mergedOperations = new KeyOperation[Math.max(4, size + other.size)];
+    long[] mergedEndTimestamps = new long[mergedOperations.length];
+    int i = 0, j = 0, k = 0;
+    while (i < size || j < other.size) {
+      if (j == other.size || (i < size && endTimestamps[i] <= other.endTimestamps[j])) {
+        mergedOperations[k] = operationsByEnd[i];
+        mergedEndTimestamps[k++] = endTimestamps[i++];
+      } else {
+        mergedOperations[k] = other.operationsByEnd[j];
+        mergedEndTimestamps[k++] = other.endTimestamps[j++];
+      }
+    }
+    operationsByEnd = mergedOperations;
+    endTimestamps = mergedEndTimestamps;
+    size = k;
+    endTS = Math.max(endTS, other.endTS);
+    startTS = Math.min(startTS, other.startTS);
+  }
+
+  /**
+   * @return true if all the operations of this group can only be linearized before the ones of the {@code later} group,
+   * either because this group ends before the other starts or because the operations touching at the boundary were
+   * issued in that order by the same session.
+   */
+  boolean isOrderedBefore(KeyOperationGroup later) {
+    if (endTS != later.startTS) {
+      return endTS < later.startTS;
+    }
+    if (later.endTS == later.startTS) {
+      return false;
+    }
+    for (int i = size - 1; i >= 0 && endTimestamps[i] == endTS; i--) {
+      KeyOperation earlierOperation = operationsByEnd[i];
+      for (int j = 0; j < later.size; j++) {
+        KeyOperation laterOperation = later.operationsByEnd[j];
+        if (laterOperation.getStartTS() == endTS && !OrderConstraints.inProgramOrder(earlierOperation, laterOperation)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   Values replay(RecordValue fromValue) {
-    return new OrderDeterminer(sortedOperations).findPossibleOutcomes(fromValue);
+    return replay(Collections.singleton(fromValue), ExplorationBudget.UNLIMITED.start());
+  }
+
+  Values replay(Set<RecordValue> fromValues, ExplorationBudget.Tracker budget) {
+    return replay(fromValues, budget, true);
+  }
+
+  Values replay(Set<RecordValue> fromValues, ExplorationBudget.Tracker budget, boolean trackIntermediateValues) {
+    return OrderDeterminer.ofEndOrdered(operationsByEnd, size, trackIntermediateValues).findPossibleOutcomes(fromValues, budget);
+  }
+
+  CutOutcome replayUntilCut(Set<RecordValue> fromValues, int minCutSize, ExplorationBudget.Tracker budget) {
+    return replayUntilCut(fromValues, minCutSize, budget, true);
+  }
+
+  CutOutcome replayUntilCut(Set<RecordValue> fromValues, int minCutSize, ExplorationBudget.Tracker budget, boolean trackIntermediateValues) {
+    return OrderDeterminer.ofEndOrdered(operationsByEnd, size, trackIntermediateValues).findPossibleOutcomesUntilCut(fromValues, minCutSize, budget);
+  }
+
+  /**
+   * Move the operations at the given end TS order indices out of this group.
+   * @return a group made of the moved operations.
+   */
+  KeyOperationGroup extract(BitSet indices) {
+    KeyOperationGroup extracted = null;
+    int kept = 0;
+    startTS = Long.MAX_VALUE;
+    endTS = Long.MIN_VALUE;
+    for (int i = 0; i < size; i++) {
+      KeyOperation operation = operationsByEnd[i];
+      if (indices.get(i)) {
+        if (extracted == null) {
+          extracted = new KeyOperationGroup(operation);
+        } else {
+          extracted.add(operation);
+        }
+      } else {
+        operationsByEnd[kept] = operation;
+        endTimestamps[kept++] = endTimestamps[i];
+        startTS = Math.min(startTS, operation.getStartTS());
+        endTS = Math.max(endTS, operation.getEndTS());
+      }
+    }
+    Arrays.fill(operationsByEnd, kept, size, null);
+    size = kept;
+    return extracted;
+  }
+
+  /**
+   * @return true if no two operations of this group overlap, e.g.: it only contains one, so that they can only be
+   * ordered by their timestamps.
+   */
+  boolean isSequential() {
+    boolean versioned = false;
+    long maxVersion = 0L;
+    for (int i = 0; i < size; i++) {
+      KeyOperation operation = operationsByEnd[i];
+      if (i > 0 && operation.getStartTS() <= endTimestamps[i - 1]) {
+        return false;
+      }
+      // versions contradicting the real-time order must be reported by the order determiner
+      if (operation.hasVersion()) {
+        long version = operation.getVersion();
+        if (versioned && version < maxVersion) {
+          return false;
+        }
+        versioned = true;
+        maxVersion = version;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Replay a sequential group directly, there is only one order to try so there is nothing to explore.
+   */
+  Values replaySequentially(Set<RecordValue> fromValues) {
+    return replaySequentially(fromValues, true);
+  }
+
+  Values replaySequentially(Set<RecordValue> fromValues, boolean trackIntermediateValues) {
+    Set<RecordValue> committedValues = new HashSet<>();
+    Set<RecordValue> intermediateValues = trackIntermediateValues ? new HashSet<>() : Collections.emptySet();
+    for (RecordValue fromValue : fromValues) {
+      RecordValue value = fromValue;
+      for (int i = 0; i < size && value != null; i++) {
+        Evaluation evaluation = operationsByEnd[i].verifyAndReplay(value);
+        if (evaluation.getErrors().isEmpty()) {
+          value = evaluation.getRecordValue();
+          if (trackIntermediateValues) {
+            intermediateValues.add(value);
+          }
+        } else {
+          value = null;
+        }
+      }
+      if (value != null) {
+        committedValues.add(value);
+      }
+    }
+    return new Values(committedValues, intermediateValues);
+  }
+
+  private int upperBound(long ts) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (endTimestamps[mid] <= ts) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > operationsByEnd.length) {
+      int newLength = Math.max(capacity, operationsByEnd.length * 2);
+      operationsByEnd = Arrays.copyOf(operationsByEnd, newLength);
+      endTimestamps = Arrays.copyOf(endTimestamps, newLength);
+    }
   }
 
   int size() {
-    return sortedOperations.size();
+    return size;
   }
 
   long endTS() {
@@ -64,6 +258,6 @@ public class KeyOperationGroup {
 
   @Override
   public String toString() {
-    return sortedOperations.toString();
+    return getOperations().toString();
   }
 }
@@ -15,23 +15,35 @@
  */
 package org.terracotta.auditor.verifier;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 public class KeyTimeline {
 
-  private final List<KeyOperationGroup> sortedOperationGroups = new ArrayList<>();
+  // groups of at least that many operations are stepped up to a cut rather than as a whole
+  static final int CUT_THRESHOLD = 32;
+
+  // disjoint groups of overlapping operations, indexed by their end TS; consecutive groups only touch when the
+  // operations at the boundary are in program order. An operation overlapping no other one is kept as is rather than
+  // in a KeyOperationGroup, most of them never get a companion
+  private final TreeMap<Long, Object> operationGroupsByEnd = new TreeMap<>();
   private final String key;
   private long notBeforeTs = Long.MIN_VALUE;
   private boolean activateNotBeforeCheck = false;
+  // position in the scheduling heap, -1 when not scheduled
+  int heapIndex = -1;
+  // order in which the timelines were created, breaks the ties of the scheduling policy
+  long sequence;
 
   public KeyTimeline(KeyOperation operation) {
     this.key = operation.getKey();
-    KeyOperationGroup operationGroup = new KeyOperationGroup(operation);
-    this.sortedOperationGroups.add(operationGroup);
-    this.notBeforeTs = operationGroup.endTS();
+    this.operationGroupsByEnd.put(operation.getEndTS(), operation);
+    this.notBeforeTs = operation.getEndTS();
   }
 
   public String getKey() {
@@ -46,46 +58,140 @@ public class KeyTimeline {
     if (operation.getStartTS() <= notBeforeTs && activateNotBeforeCheck) {
       // if this happens, the history is too short
       throw new IllegalStateException("History too short for such unordered gap at " + operation.getName() + "#" + operation.getKey() +
-          " startTS=" + operation.getStartTS() + " - timeline size : " + sortedOperationGroups.size());
+          " startTS=" + operation.getStartTS() + " - timeline size : " + operationGroupsByEnd.size());
     }
 
-    // look for an operationGroup this operation is overlapping with
-    //TODO: the potential of perf optimization of the following loop is immense
-    // hopefully, this happens so rarely that this does not matter
-    for (int i = 0; i < sortedOperationGroups.size(); i++) {
-      KeyOperationGroup operationGroup = sortedOperationGroups.get(i);
-      if (operation.getStartTS() <= operationGroup.endTS()) {
-        operationGroup.add(operation);
-        if (sortedOperationGroups.size() > i + 1) {
-          // all operations after the indexed one may overlap with it, so they must be re-added to make sure they end up in the right group
-          List<KeyOperationGroup> endOfList = sortedOperationGroups.subList(i + 1, sortedOperationGroups.size());
-          List<KeyOperationGroup> toReprocess = new ArrayList<>(endOfList);
-          endOfList.clear();
-          for (KeyOperationGroup og : toReprocess) {
-            for (KeyOperation o : og.getOperations()) {
-              add(o);
-            }
-          }
+    // groups are disjoint and sorted, though a group may touch the next one when only program order links them;
+    // all the groups the operation overlaps with are merged into a single one, which may in turn overlap more groups
+    Object operations = operation;
+    boolean merged = true;
+    while (merged) {
+      merged = false;
+      Iterator<Object> it = operationGroupsByEnd.tailMap(startTS(operations), true).values().iterator();
+      while (it.hasNext()) {
+        Object other = it.next();
+        if (startTS(other) > endTS(operations)) {
+          break;
+        }
+        if (isOrderedBefore(other, operations) || isOrderedBefore(operations, other)) {
+          continue;
+        }
+        it.remove();
+        if (operations == operation) {
+          KeyOperationGroup operationGroup = toGroup(other);
+          operationGroup.add(operation);
+          operations = operationGroup;
+        } else if (other instanceof KeyOperation) {
+          ((KeyOperationGroup) operations).add((KeyOperation) other);
+        } else {
+          ((KeyOperationGroup) operations).merge((KeyOperationGroup) other);
         }
-        return;
+        merged = true;
       }
     }
+    operationGroupsByEnd.put(endTS(operations), operations);
+  }
+
+  /**
+   * @see KeyOperationGroup#isOrderedBefore(KeyOperationGroup)
+   */
+  private static boolean isOrderedBefore(Object earlier, Object later) {
+    // the operations only have to be looked at when they touch
+    if (endTS(earlier) != startTS(later)) {
+      return endTS(earlier) < startTS(later);
+    }
+    return toGroup(earlier).isOrderedBefore(toGroup(later));
+  }
+
+  private static long startTS(Object operations) {
+    if (operations instanceof KeyOperation) {
+      return ((KeyOperation) operations).getStartTS();
+    }
+    return ((KeyOperationGroup) operations).startTS();
+  }
 
-    // either this is the 1st operation, or this timeline got emptied and is now being refilled
-    KeyOperationGroup operationGroup = new KeyOperationGroup(operation);
-    sortedOperationGroups.add(operationGroup);
+  private static long endTS(Object operations) {
+    if (operations instanceof KeyOperation) {
+      return ((KeyOperation) operations).getEndTS();
+    }
+    return ((KeyOperationGroup) operations).endTS();
+  }
+
+  private static KeyOperationGroup toGroup(Object operations) {
+    if (operations instanceof KeyOperation) {
+      return new KeyOperationGroup((KeyOperation) operations);
+    }
+    return (KeyOperationGroup) operations;
   }
 
   public StepResult step(Set<RecordValue> possibleValuesAtHead) throws VerificationException {
-    KeyOperationGroup operationGroup = sortedOperationGroups.remove(0);
-
-    Set<RecordValue> allNewPossibleValues = new HashSet<>();
-    Set<RecordValue> allIntermediateValues = new HashSet<>();
-    for (RecordValue possibleValue : possibleValuesAtHead) {
-      Values values = operationGroup.replay(possibleValue);
-      allNewPossibleValues.addAll(values.getCommittedValues());
-      allIntermediateValues.addAll(values.getIntermediateValues());
+    return step(possibleValuesAtHead, new GroupReplayer(ExplorationBudget.UNLIMITED));
+  }
+
+  StepResult step(Set<RecordValue> possibleValuesAtHead, GroupReplayer replayer) throws VerificationException {
+    if (headSize() < CUT_THRESHOLD) {
+      return replay(pollHeadGroup(), possibleValuesAtHead, replayer);
+    }
+
+    // a long overlap chain may never become quiescent, only step it up to a cut and keep the rest for later
+    KeyOperationGroup operationGroup = (KeyOperationGroup) operationGroupsByEnd.pollFirstEntry().getValue();
+    CutOutcome outcome = replayer.replayUntilCut(key, operationGroup, possibleValuesAtHead);
+    if (outcome.getConsumedOperations() != null) {
+      KeyOperationGroup consumed = operationGroup.extract(outcome.getConsumedOperations());
+      operationGroupsByEnd.put(operationGroup.endTS(), operationGroup);
+      operationGroup = consumed;
     }
+    activateNotBeforeCheck = true;
+    notBeforeTs = operationGroup.endTS();
+    return stepResult(operationGroup, outcome.getValues(), possibleValuesAtHead);
+  }
+
+  /**
+   * @return the number of operations of the group that will be stepped next.
+   */
+  int headSize() {
+    Object head = operationGroupsByEnd.firstEntry().getValue();
+    return head instanceof KeyOperation ? 1 : ((KeyOperationGroup) head).size();
+  }
+
+  /**
+   * Remove the next group so that it can be replayed by {@link #replay(KeyOperationGroup, Set, GroupReplayer)} later,
+   * possibly on another thread. Only groups below the cut threshold can be stepped that way.
+   */
+  KeyOperationGroup pollHeadGroup() {
+    Map.Entry<Long, Object> head = operationGroupsByEnd.pollFirstEntry();
+    activateNotBeforeCheck = true;
+    notBeforeTs = head.getKey();
+    return toGroup(head.getValue());
+  }
+
+  /**
+   * Remove the next operation if it overlaps no other one, so that it can be replayed by
+   * {@link #replay(KeyOperation, Set)} later, possibly on another thread.
+   *
+   * @return the operation, or null if the next group has several operations; the timeline is then left untouched.
+   */
+  KeyOperation pollLoneOperation() {
+    Map.Entry<Long, Object> head = operationGroupsByEnd.firstEntry();
+    if (!(head.getValue() instanceof KeyOperation)) {
+      return null;
+    }
+    operationGroupsByEnd.pollFirstEntry();
+    activateNotBeforeCheck = true;
+    notBeforeTs = head.getKey();
+    return (KeyOperation) head.getValue();
+  }
+
+  /**
+   * Replay a group removed by {@link #pollHeadGroup()}. This does not touch the timeline.
+   */
+  StepResult replay(KeyOperationGroup operationGroup, Set<RecordValue> possibleValuesAtHead, GroupReplayer replayer) throws VerificationException {
+    return stepResult(operationGroup, replayer.replay(key, operationGroup, possibleValuesAtHead), possibleValuesAtHead);
+  }
+
+  private StepResult stepResult(KeyOperationGroup operationGroup, Values values, Set<RecordValue> possibleValuesAtHead) throws VerificationException {
+    Set<RecordValue> allNewPossibleValues = values.getCommittedValues();
+    Set<RecordValue> allIntermediateValues = values.getIntermediateValues();
     String error = null;
     if (allNewPossibleValues.isEmpty()) {
       error = "Verification error on key " + key + " : " + operationGroup + " makes no sense with " + possibleValuesAtHead;
@@ -93,8 +199,6 @@ public class KeyTimeline {
       allNewPossibleValues.add(RecordValue.UNKNOWN_PRESENT);
     }
 
-    activateNotBeforeCheck = true;
-    notBeforeTs = operationGroup.endTS();
     StepResult stepResult = new StepResult(operationGroup.startTS(), operationGroup.endTS(), allNewPossibleValues, operationGroup.size(), allIntermediateValues);
     if (error != null) {
       throw new VerificationException(error, stepResult);
@@ -102,11 +206,53 @@ public class KeyTimeline {
     return stepResult;
   }
 
-  boolean isEmpty() {
-    return sortedOperationGroups.isEmpty();
+  /**
+   * Replay an operation removed by {@link #pollLoneOperation()}. There is a single order to try, so the operation is
+   * replayed directly against each head value, without a group or an exploration.
+   *
+   * @return the possible values after the operation, which are also its intermediate values.
+   */
+  Set<RecordValue> replay(KeyOperation operation, Set<RecordValue> possibleValuesAtHead) throws VerificationException {
+    Set<RecordValue> newPossibleValues;
+    if (possibleValuesAtHead.size() == 1) {
+      Evaluation evaluation = operation.verifyAndReplay(possibleValuesAtHead.iterator().next());
+      newPossibleValues = evaluation.getErrors().isEmpty() ? Collections.singleton(evaluation.getRecordValue()) : Collections.emptySet();
+    } else {
+      newPossibleValues = new HashSet<>();
+      for (RecordValue possibleValue : possibleValuesAtHead) {
+        Evaluation evaluation = operation.verifyAndReplay(possibleValue);
+        if (evaluation.getErrors().isEmpty()) {
+          newPossibleValues.add(evaluation.getRecordValue());
+        }
+      }
+    }
+    if (newPossibleValues.isEmpty()) {
+      Set<RecordValue> allValues = new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+      throw new VerificationException("Verification error on key " + key + " : " + Collections.singletonList(operation) + " makes no sense with " + possibleValuesAtHead,
+          new StepResult(operation.getStartTS(), operation.getEndTS(), allValues, 1, allValues));
+    }
+    return newPossibleValues;
+  }
+
+  public boolean isEmpty() {
+    return operationGroupsByEnd.isEmpty();
+  }
+
+  public int size() {
+    return operationGroupsByEnd.size();
+  }
+
+  /**
+   * @return the end TS of the group that will be stepped next.
+   */
+  public long headEndTS() {
+    return operationGroupsByEnd.firstKey();
   }
 
-  int size() {
-    return sortedOperationGroups.size();
+  /**
+   * @return the start TS of the first group, which is the earliest start TS of all the pending operations.
+   */
+  public long headStartTS() {
+    return startTS(operationGroupsByEnd.firstEntry().getValue());
   }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of exploration states, a state being a mask of the consumed operations plus the id of the
+ * value they lead to. The states are also kept densely in insertion order, so the set doubles as the frontier.
+ */
+class MaskStateSet {
+
+  private long[] masks;
+  private int[] valueIds;
+  // index of the state in the dense arrays + 1, 0 meaning an empty slot
+  private int[] slots;
+  private int size = 0;
+
+  MaskStateSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+    this.slots = new int[capacity];
+    this.masks = new long[capacity / 2];
+    this.valueIds = new int[capacity / 2];
+  }
+
+  /**
+   * @return true if the state was not already in the set.
+   */
+  boolean add(long mask, int valueId) {
+    int slotMask = slots.length - 1;
+    int slot = hash(mask, valueId) & slotMask;
+    while (true) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        break;
+      }
+      if (masks[entry - 1] == mask && valueIds[entry - 1] == valueId) {
+        return false;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+
+    if (size == masks.length) {
+      grow();
+      return add(mask, valueId);
+    }
+    masks[size] = mask;
+    valueIds[size] = valueId;
+    slots[slot] = ++size;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long mask(int index) {
+    return masks[index];
+  }
+
+  int valueId(int index) {
+    return valueIds[index];
+  }
+
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(slots, 0);
+      size = 0;
+    }
+  }
+
+  private void grow() {
+    // the dense arrays are kept at half the slot count so the load factor never exceeds 0.5
+    masks = Arrays.copyOf(masks, masks.length * 2);
+    valueIds = Arrays.copyOf(valueIds, valueIds.length * 2);
+    slots = new int[slots.length * 2];
+    int slotMask = slots.length - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hash(masks[i], valueIds[i]) & slotMask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & slotMask;
+      }
+      slots[slot] = i + 1;
+    }
+  }
+
+  static int hash(long mask, int valueId) {
+    long h = (mask + valueId * 0x9E3779B97F4A7C15L) * 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -21,8 +21,21 @@ public abstract class NonKeyOperation extends Operation {
     super(name, startTS, endTS, result);
   }
 
+  protected NonKeyOperation(String name, long startTS, long endTS, String result, String sessionId) {
+    super(name, startTS, endTS, result, sessionId);
+  }
+
   public abstract String verifyAndReplay(SorHistory from);
 
+  /**
+   * Tell if verifying this operation can change the history. Operations returning false only ever query the history,
+   * so they can be verified concurrently with each other.
+   * @return true unless this operation is known to be read-only, which is always safe.
+   */
+  public boolean canMutate() {
+    return true;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName() + " startTs=" + getStartTS() + " endsTS=" + getEndTS() + " result=" + getResult();
@@ -21,12 +21,18 @@ public abstract class Operation {
   private final long startTS;
   private final long endTS;
   private final String result;
+  private final String sessionId;
 
   protected Operation(String name, long startTS, long endTS, String result) {
+    this(name, startTS, endTS, result, null);
+  }
+
+  protected Operation(String name, long startTS, long endTS, String result, String sessionId) {
     this.name = name;
     this.startTS = startTS;
     this.endTS = endTS;
     this.result = result;
+    this.sessionId = sessionId;
   }
 
   public String getName() {
@@ -44,4 +50,11 @@ public abstract class Operation {
   public String getResult() {
     return result;
   }
+
+  /**
+   * @return the id of the session which issued this operation, or null if unknown.
+   */
+  public String getSessionId() {
+    return sessionId;
+  }
 }
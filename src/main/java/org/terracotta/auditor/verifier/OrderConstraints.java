@@ -0,0 +1,86 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Ordering rules between the operations of a group that hold in any valid order, on top of the real-time order given
+ * by their timestamps.
+ */
+final class OrderConstraints {
+
+  private OrderConstraints() {
+  }
+
+  /**
+   * @return true if {@code first} must be ordered before {@code second}, i.e.: it observed or produced an older version,
+   * or it was issued earlier by the same session.
+   */
+  static boolean mustPrecede(KeyOperation first, KeyOperation second) {
+    if (first.hasVersion() && second.hasVersion() && first.getVersion() < second.getVersion()) {
+      return true;
+    }
+    return inProgramOrder(first, second);
+  }
+
+  /**
+   * @return true if both operations were issued by the same session, {@code first} before {@code second}.
+   */
+  static boolean inProgramOrder(Operation first, Operation second) {
+    return first.getSessionId() != null && first.getSessionId().equals(second.getSessionId()) && first.getStartTS() < second.getStartTS();
+  }
+
+  /**
+   * @return for each operation, the mask of the operations that must precede it, or null if there is no constraint.
+   */
+  static long[] predecessorMasks(KeyOperation[] operations) {
+    long[] masks = null;
+    for (int i = 0; i < operations.length; i++) {
+      for (int j = 0; j < operations.length; j++) {
+        if (i != j && mustPrecede(operations[j], operations[i])) {
+          if (masks == null) {
+            masks = new long[operations.length];
+          }
+          masks[i] |= 1L << j;
+        }
+      }
+    }
+    return masks;
+  }
+
+  /**
+   * @return for each operation, the operations that must precede it, or null if there is no constraint.
+   */
+  static BitSet[] predecessors(List<KeyOperation> operations) {
+    BitSet[] predecessors = null;
+    for (int i = 0; i < operations.size(); i++) {
+      for (int j = 0; j < operations.size(); j++) {
+        if (i != j && mustPrecede(operations.get(j), operations.get(i))) {
+          if (predecessors == null) {
+            predecessors = new BitSet[operations.size()];
+          }
+          if (predecessors[i] == null) {
+            predecessors[i] = new BitSet(operations.size());
+          }
+          predecessors[i].set(j);
+        }
+      }
+    }
+    return predecessors;
+  }
+}
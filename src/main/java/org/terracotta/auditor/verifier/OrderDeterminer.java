@@ -15,8 +15,10 @@
  */
 package org.terracotta.auditor.verifier;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -26,31 +28,119 @@ import java.util.stream.Collectors;
 
 public class OrderDeterminer {
   private final List<KeyOperation> operations;
+  // null when the intermediate values are not needed
   private final Set<RecordValue> intermediateValues;
+  private BitSet[] predecessors;
 
   public OrderDeterminer(Collection<KeyOperation> operations) {
-    this.operations = operations.stream().sorted(new EndTimestampComparator()).collect(Collectors.toList());
-    this.intermediateValues = new HashSet<>();
+    this(operations.stream().sorted(new EndTimestampComparator()).collect(Collectors.toList()), true);
+  }
+
+  private OrderDeterminer(List<KeyOperation> operationsByEnd, boolean trackIntermediateValues) {
+    this.operations = operationsByEnd;
+    this.intermediateValues = trackIntermediateValues ? new HashSet<>() : null;
+  }
+
+  /**
+   * Create an order determiner over the first {@code count} operations of an array already sorted by end TS.
+   */
+  static OrderDeterminer ofEndOrdered(KeyOperation[] operationsByEnd, int count) {
+    return ofEndOrdered(operationsByEnd, count, true);
+  }
+
+  /**
+   * Same as {@link #ofEndOrdered(KeyOperation[], int)}, the outcomes only holding intermediate values if asked to.
+   */
+  static OrderDeterminer ofEndOrdered(KeyOperation[] operationsByEnd, int count, boolean trackIntermediateValues) {
+    return new OrderDeterminer(Arrays.asList(operationsByEnd).subList(0, count), trackIntermediateValues);
   }
 
   public Values findPossibleOutcomes(RecordValue initialValue) {
+    return findPossibleOutcomes(Collections.singleton(initialValue));
+  }
+
+  /**
+   * Explore the outcomes of all the initial values in a single pass, sharing the states they converge to.
+   */
+  public Values findPossibleOutcomes(Set<RecordValue> initialValues) {
+    return findPossibleOutcomes(initialValues, ExplorationBudget.UNLIMITED.start());
+  }
+
+  /**
+   * @throws ExplorationBudget.BudgetExceededException if the exploration goes over budget.
+   */
+  Values findPossibleOutcomes(Set<RecordValue> initialValues, ExplorationBudget.Tracker budget) {
+    return findPossibleOutcomesUntilCut(initialValues, Integer.MAX_VALUE, budget).getValues();
+  }
+
+  /**
+   * Explore until the first cut consuming at least {@code minCutSize} operations, or until the end if there is none.
+   * @throws ExplorationBudget.BudgetExceededException if the exploration goes over budget.
+   */
+  CutOutcome findPossibleOutcomesUntilCut(Set<RecordValue> initialValues, int minCutSize, ExplorationBudget.Tracker budget) {
+    if (operations.size() <= BitmaskExplorer.MAX_OPERATIONS) {
+      return new BitmaskExplorer(operations, BitmaskExplorer.DEFAULT_PARALLEL_THRESHOLD, intermediateValues != null).findPossibleOutcomesUntilCut(initialValues, minCutSize, budget);
+    }
+    return exploreWithBitSets(initialValues, minCutSize, budget);
+  }
+
+  /**
+   * Same as {@link #findPossibleOutcomesUntilCut(Set, int, ExplorationBudget.Tracker)} with the engine tracking the
+   * used operations in bit sets, which has no limit on the group size.
+   */
+  CutOutcome exploreWithBitSets(Set<RecordValue> initialValues, int minCutSize, ExplorationBudget.Tracker budget) {
+    predecessors = OrderConstraints.predecessors(operations);
     Set<Possibility> possibilities = new HashSet<>();
-    possibilities.add(new Possibility(new BitSet(operations.size()), initialValue));
+    for (RecordValue initialValue : initialValues) {
+      possibilities.add(new Possibility(new BitSet(operations.size()), initialValue));
+    }
 
     for (int i = 0; i < operations.size(); i++) {
-      possibilities = iterate(possibilities);
+      possibilities = iterate(possibilities, budget);
+      budget.onLevel(possibilities.size());
+
+      int consumed = i + 1;
+      // only the operations ending first can be cut, so that what remains of the group ends strictly after what was cut
+      if (consumed >= minCutSize && consumed < operations.size() && !possibilities.isEmpty() &&
+          operations.get(consumed - 1).getEndTS() < operations.get(consumed).getEndTS()) {
+        BitSet usedOperations = possibilities.iterator().next().usedOperations;
+        if (usedOperations.nextClearBit(0) == consumed && possibilities.stream().allMatch(p -> p.usedOperations.equals(usedOperations))) {
+          return new CutOutcome(usedOperations, valuesOf(possibilities));
+        }
+      }
     }
 
-    Set<RecordValue> finalValues = possibilities.stream().parallel().map(Possibility::getValue).collect(Collectors.toSet());
-    return new Values(finalValues, intermediateValues);
+    return new CutOutcome(null, valuesOf(possibilities));
+  }
+
+  private Values valuesOf(Set<Possibility> possibilities) {
+    Set<RecordValue> finalValues = possibilities.stream().map(Possibility::getValue).collect(Collectors.toSet());
+    return new Values(finalValues, intermediateValues == null ? Collections.emptySet() : intermediateValues);
   }
 
-  private Set<Possibility> iterate(Set<Possibility> possibilities) {
+  private Set<Possibility> iterate(Set<Possibility> possibilities, ExplorationBudget.Tracker budget) {
     Set<Possibility> newPossibilities = new HashSet<>();
 
     for (Possibility possibility : possibilities) {
+      // the level being built may outgrow the budget long before it completes
+      budget.onExpansion(newPossibilities.size());
       Set<Integer> nextSteps = possibility.findNextSteps();
 
+      // a read-only operation that can run now does not need to be tried at any later position
+      Optional<Possibility> readOnlyPossibility = Optional.empty();
+      for (Integer nextStep : nextSteps) {
+        if (!operations.get(nextStep).canMutate()) {
+          readOnlyPossibility = possibility.step(nextStep).filter(p -> p.getValue().equals(possibility.getValue()));
+          if (readOnlyPossibility.isPresent()) {
+            break;
+          }
+        }
+      }
+      if (readOnlyPossibility.isPresent()) {
+        newPossibilities.add(readOnlyPossibility.get());
+        continue;
+      }
+
       for (Integer nextStep : nextSteps) {
         Optional<Possibility> newPossibility = possibility.step(nextStep);
         newPossibility.ifPresent(newPossibilities::add);
@@ -102,7 +192,9 @@ public class OrderDeterminer {
       BitSet newUsedOperations = withAdditionalUsedOperation(nextStep);
       RecordValue newValue = evaluation.getRecordValue();
 
-      intermediateValues.add(newValue);
+      if (intermediateValues != null) {
+        intermediateValues.add(newValue);
+      }
 
       return Optional.of(new Possibility(newUsedOperations, newValue));
     }
@@ -127,12 +219,25 @@ public class OrderDeterminer {
         }
 
         long startTS = operation.getStartTS();
-        if (startTS <= limitingEndTS) {
+        if (startTS <= limitingEndTS && predecessorsUsed(operationIndex)) {
           result.add(operationIndex);
         }
       }
 
       return result;
     }
+
+    private boolean predecessorsUsed(int operationIndex) {
+      BitSet operationPredecessors = predecessors == null ? null : predecessors[operationIndex];
+      if (operationPredecessors == null) {
+        return true;
+      }
+      for (int i = operationPredecessors.nextSetBit(0); i >= 0; i = operationPredecessors.nextSetBit(i + 1)) {
+        if (!usedOperations.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 }
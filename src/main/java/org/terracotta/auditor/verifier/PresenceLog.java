@@ -0,0 +1,102 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+/**
+ * The changes of the definitely and possibly present key counts of a history segment, indexed by the TS after which
+ * they apply. The counts are stored as running sums in TS order, so that the counts at a TS are found by a binary
+ * search.
+ */
+class PresenceLog extends TimestampLog {
+
+  // running sums up to each change for the sorted entries, the change itself for the ones appended out of order
+  private int[] definitelyPresent = new int[16];
+  private int[] possiblyPresent = new int[16];
+  // the running sums of the entries dropped from the front
+  private int foldedDefinitelyPresent = 0;
+  private int foldedPossiblyPresent = 0;
+
+  PresenceLog() {
+    super(16);
+  }
+
+  void add(long ts, int definitelyDelta, int possiblyDelta) {
+    int index = append(ts);
+    if (index < sortedEnd) {
+      definitelyPresent[index] = definitelyPresentBefore(index) + definitelyDelta;
+      possiblyPresent[index] = possiblyPresentBefore(index) + possiblyDelta;
+    } else {
+      definitelyPresent[index] = definitelyDelta;
+      possiblyPresent[index] = possiblyDelta;
+    }
+  }
+
+  /**
+   * @return the sum of the definitely present changes applying strictly before the TS.
+   */
+  int getDefinitelyPresentAt(long ts) {
+    sort();
+    return definitelyPresentBefore(ceiling(ts));
+  }
+
+  /**
+   * @return the sum of the possibly present changes applying strictly before the TS.
+   */
+  int getPossiblyPresentAt(long ts) {
+    sort();
+    return possiblyPresentBefore(ceiling(ts));
+  }
+
+  /**
+   * Fold the changes applying strictly before the TS, they can then only be queried as a whole.
+   */
+  void removeBefore(long ts) {
+    sort();
+    int last = ceiling(ts);
+    foldedDefinitelyPresent = definitelyPresentBefore(last);
+    foldedPossiblyPresent = possiblyPresentBefore(last);
+    dropBefore(last);
+  }
+
+  private int definitelyPresentBefore(int index) {
+    return index > first ? definitelyPresent[index - 1] : foldedDefinitelyPresent;
+  }
+
+  private int possiblyPresentBefore(int index) {
+    return index > first ? possiblyPresent[index - 1] : foldedPossiblyPresent;
+  }
+
+  @Override
+  void reorder(int from, int[] sources) {
+    // the sorted entries that move hold running sums, turn them back into changes before merging
+    for (int i = sortedEnd - 1; i >= from; i--) {
+      definitelyPresent[i] -= definitelyPresentBefore(i);
+      possiblyPresent[i] -= possiblyPresentBefore(i);
+    }
+    definitelyPresent = reorder(definitelyPresent, from, sources);
+    possiblyPresent = reorder(possiblyPresent, from, sources);
+    for (int i = from; i < end; i++) {
+      definitelyPresent[i] += definitelyPresentBefore(i);
+      possiblyPresent[i] += possiblyPresentBefore(i);
+    }
+  }
+
+  @Override
+  void compact(int capacity) {
+    definitelyPresent = compact(definitelyPresent, new int[capacity]);
+    possiblyPresent = compact(possiblyPresent, new int[capacity]);
+  }
+}
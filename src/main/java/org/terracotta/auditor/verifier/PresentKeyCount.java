@@ -0,0 +1,49 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+/**
+ * How many keys hold a value at a given time, out of all the possible values each key may hold then.
+ */
+public class PresentKeyCount {
+
+  private final int definitelyPresent;
+  private final int possiblyPresent;
+
+  PresentKeyCount(int definitelyPresent, int possiblyPresent) {
+    this.definitelyPresent = definitelyPresent;
+    this.possiblyPresent = possiblyPresent;
+  }
+
+  /**
+   * @return the number of keys which cannot be absent.
+   */
+  public int getDefinitelyPresent() {
+    return definitelyPresent;
+  }
+
+  /**
+   * @return the number of keys which may be present.
+   */
+  public int getPossiblyPresent() {
+    return possiblyPresent;
+  }
+
+  @Override
+  public String toString() {
+    return "PresentKeyCount{definitelyPresent=" + definitelyPresent + ", possiblyPresent=" + possiblyPresent + "}";
+  }
+}
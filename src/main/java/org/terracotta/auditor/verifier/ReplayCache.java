@@ -0,0 +1,283 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of group replay outcomes, keyed by the canonical shape of the group and an abstraction of the values
+ * it is replayed from.
+ * <p>
+ * The shape retains the class and result of each operation and the relative order of all their timestamps and versions.
+ * Each input value is reduced to absent, unknown present, the index of the first operation whose result equals it or a
+ * fresh value equal to none of them. The outcome values are stored symbolically in the same terms, or as the position
+ * of the input they equal, and rebound to the concrete values on a hit. This is only valid as long as key operations
+ * behave according to their class, result and timestamps alone, and never look at a concrete value other than comparing
+ * it to their own result.
+ * <p>
+ * Not thread safe.
+ */
+class ReplayCache {
+
+  private static final int ABSENT = -1;
+  private static final int UNKNOWN = -2;
+  private static final int FRESH = -3;
+  // the input at position i is encoded as FIRST_INPUT - i
+  private static final int FIRST_INPUT = -4;
+
+  private final Map<Entry, int[][]> outcomes;
+  private long hits = 0L;
+  private long misses = 0L;
+
+  ReplayCache(int maxSize) {
+    this.outcomes = new LinkedHashMap<Entry, int[][]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Entry, int[][]> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the cached outcome of replaying the group from the values, or null.
+   */
+  Values get(Shape shape, Set<RecordValue> inputs) {
+    RecordValue[] canonicalInputs = canonicalize(shape, inputs);
+    int[][] outcome = outcomes.get(new Entry(shape, abstractInputs(shape, canonicalInputs)));
+    if (outcome == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return new Values(rebind(shape, canonicalInputs, outcome[0]), rebind(shape, canonicalInputs, outcome[1]));
+  }
+
+  void put(Shape shape, Set<RecordValue> inputs, Values values) {
+    RecordValue[] canonicalInputs = canonicalize(shape, inputs);
+    int[] committed = tokenize(shape, canonicalInputs, values.getCommittedValues());
+    int[] intermediate = tokenize(shape, canonicalInputs, values.getIntermediateValues());
+    if (committed != null && intermediate != null) {
+      outcomes.put(new Entry(shape, abstractInputs(shape, canonicalInputs)), new int[][] { committed, intermediate });
+    }
+  }
+
+  long getHits() {
+    return hits;
+  }
+
+  long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Order the inputs by their abstraction. Fresh inputs are indistinguishable for the operations, so their relative
+   * order does not matter.
+   */
+  private static RecordValue[] canonicalize(Shape shape, Set<RecordValue> inputs) {
+    RecordValue[] canonicalInputs = inputs.toArray(new RecordValue[0]);
+    Arrays.sort(canonicalInputs, Comparator.comparingInt(value -> abstractInput(shape, value)));
+    return canonicalInputs;
+  }
+
+  private static int[] abstractInputs(Shape shape, RecordValue[] canonicalInputs) {
+    int[] abstractInputs = new int[canonicalInputs.length];
+    for (int i = 0; i < canonicalInputs.length; i++) {
+      abstractInputs[i] = abstractInput(shape, canonicalInputs[i]);
+    }
+    return abstractInputs;
+  }
+
+  private static int abstractInput(Shape shape, RecordValue value) {
+    if (value.isAbsent()) {
+      return ABSENT;
+    }
+    if (value.isUnknown()) {
+      return UNKNOWN;
+    }
+    int index = shape.indexOfResult(value.getResult());
+    return index < 0 ? FRESH : index;
+  }
+
+  private static int[] tokenize(Shape shape, RecordValue[] canonicalInputs, Set<RecordValue> values) {
+    int[] tokens = new int[values.size()];
+    int i = 0;
+    for (RecordValue value : values) {
+      int token;
+      if (value.isAbsent()) {
+        token = ABSENT;
+      } else if (value.isUnknown()) {
+        token = UNKNOWN;
+      } else {
+        token = indexOfConcreteInput(canonicalInputs, value);
+        if (token >= 0) {
+          token = FIRST_INPUT - token;
+        } else {
+          token = shape.indexOfResult(value.getResult());
+          if (token < 0) {
+            // a value coming out of nowhere, it cannot be rebound
+            return null;
+          }
+        }
+      }
+      tokens[i++] = token;
+    }
+    return tokens;
+  }
+
+  private static int indexOfConcreteInput(RecordValue[] canonicalInputs, RecordValue value) {
+    for (int i = 0; i < canonicalInputs.length; i++) {
+      RecordValue input = canonicalInputs[i];
+      if (!input.isAbsent() && !input.isUnknown() && value.equals(input)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static Set<RecordValue> rebind(Shape shape, RecordValue[] canonicalInputs, int[] tokens) {
+    Set<RecordValue> values = new HashSet<>();
+    for (int token : tokens) {
+      if (token == ABSENT) {
+        values.add(RecordValue.ABSENT);
+      } else if (token == UNKNOWN) {
+        values.add(RecordValue.UNKNOWN_PRESENT);
+      } else if (token <= FIRST_INPUT) {
+        values.add(canonicalInputs[FIRST_INPUT - token]);
+      } else {
+        values.add(new RecordValue(shape.results[token]));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * The canonical form of a group : the class and result of each operation, in end TS order, plus the rank of each
+   * start and end TS among all the timestamps of the group and the rank of each version among all the versions.
+   */
+  static class Shape {
+    private final Class<?>[] types;
+    private final String[] results;
+    private final int[] ranks;
+    private final int[] versionRanks;
+    private final int[] sessions;
+    private final int hashCode;
+
+    Shape(List<KeyOperation> operationsByEnd) {
+      int size = operationsByEnd.size();
+      this.types = new Class<?>[size];
+      this.results = new String[size];
+      long[] timestamps = new long[size * 2];
+      this.sessions = new int[size];
+      Map<String, Integer> sessionIndices = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        KeyOperation operation = operationsByEnd.get(i);
+        types[i] = operation.getClass();
+        results[i] = operation.getResult();
+        timestamps[i * 2] = operation.getStartTS();
+        timestamps[i * 2 + 1] = operation.getEndTS();
+        // sessions only matter through program order, so they are numbered by first appearance
+        String sessionId = operation.getSessionId();
+        sessions[i] = sessionId == null ? -1 : sessionIndices.computeIfAbsent(sessionId, id -> sessionIndices.size());
+      }
+      this.ranks = ranksOf(timestamps);
+      this.versionRanks = versionRanksOf(operationsByEnd);
+      int hash = 31 * (31 * (31 * Arrays.hashCode(types) + Arrays.hashCode(results)) + Arrays.hashCode(ranks)) + Arrays.hashCode(versionRanks);
+      this.hashCode = 31 * hash + Arrays.hashCode(sessions);
+    }
+
+    private static int[] ranksOf(long[] values) {
+      long[] distinct = Arrays.stream(values).sorted().distinct().toArray();
+      int[] ranks = new int[values.length];
+      for (int i = 0; i < values.length; i++) {
+        ranks[i] = Arrays.binarySearch(distinct, values[i]);
+      }
+      return ranks;
+    }
+
+    /**
+     * @return the rank of each version among the distinct versions of the group, -1 for the operations without one.
+     */
+    private static int[] versionRanksOf(List<KeyOperation> operations) {
+      long[] distinct = operations.stream().filter(KeyOperation::hasVersion).mapToLong(KeyOperation::getVersion).sorted().distinct().toArray();
+      int[] ranks = new int[operations.size()];
+      for (int i = 0; i < ranks.length; i++) {
+        KeyOperation operation = operations.get(i);
+        ranks[i] = operation.hasVersion() ? Arrays.binarySearch(distinct, operation.getVersion()) : -1;
+      }
+      return ranks;
+    }
+
+    private int indexOfResult(String result) {
+      for (int i = 0; i < results.length; i++) {
+        if (Objects.equals(results[i], result)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Shape)) {
+        return false;
+      }
+      Shape other = (Shape) o;
+      return hashCode == other.hashCode && Arrays.equals(ranks, other.ranks) && Arrays.equals(versionRanks, other.versionRanks) &&
+          Arrays.equals(sessions, other.sessions) &&
+          Arrays.equals(types, other.types) && Arrays.equals(results, other.results);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class Entry {
+    private final Shape shape;
+    private final int[] inputs;
+
+    Entry(Shape shape, int[] inputs) {
+      this.shape = shape;
+      this.inputs = inputs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) o;
+      return Arrays.equals(inputs, other.inputs) && shape.equals(other.shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return shape.hashCode() * 31 + Arrays.hashCode(inputs);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Comparator;
+
+/**
+ * Decides which key timeline gets stepped next. The timeline ordered first by this comparator is the one stepped.
+ */
+public interface SchedulingPolicy extends Comparator<KeyTimeline> {
+
+  /**
+   * Step the timeline holding the most operation groups first.
+   */
+  static SchedulingPolicy largestFirst() {
+    return (t1, t2) -> Integer.compare(t2.size(), t1.size());
+  }
+
+  /**
+   * Step the timeline whose first operation group ends the earliest first, so that the verification progresses
+   * evenly over time across all keys.
+   */
+  static SchedulingPolicy oldestGroupFirst() {
+    return (t1, t2) -> Long.compare(t1.headEndTS(), t2.headEndTS());
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.auditor.journal.merge.JournalMerger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Verifier of journals made of {@link KeyOperation}s only. Since the timelines of different keys are independent,
+ * the journal is split by key hash into partition files in a single streaming pass, then each partition is verified
+ * by its own {@link Verifier} on a separate thread. Errors and final values of all partitions are combined once
+ * they are all done.
+ */
+public class ShardedVerifier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardedVerifier.class);
+
+  private final Path[] journalPaths;
+  private final Path workDirectory;
+  private final int shardCount;
+  private final int windowSize;
+  private final Function<String, Operation> operationParser;
+
+  public ShardedVerifier(File journalFile, File workDirectory, int shardCount, int windowSize, Function<String, Operation> operationParser) {
+    this(new Path[] { journalFile.toPath() }, workDirectory.toPath(), shardCount, windowSize, operationParser);
+  }
+
+  /**
+   * @param journalPaths the journals to verify, merged on the fly when there are more than one.
+   * @param workDirectory where to store the partition files, which are deleted once verified.
+   * @param shardCount the number of partitions to split the journals into.
+   * @param windowSize the window size of each partition's verifier.
+   * @param operationParser the journal line parser.
+   */
+  public ShardedVerifier(Path[] journalPaths, Path workDirectory, int shardCount, int windowSize, Function<String, Operation> operationParser) {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("shardCount must be positive : " + shardCount);
+    }
+    this.journalPaths = journalPaths;
+    this.workDirectory = workDirectory;
+    this.shardCount = shardCount;
+    this.windowSize = windowSize;
+    this.operationParser = operationParser;
+  }
+
+  public List<String> verify() {
+    return verify((x) -> Collections.emptyList());
+  }
+
+  public List<String> verify(Function<Map<String, Set<RecordValue>>, List<String>> extraCheck) {
+    long before = System.nanoTime();
+    List<Path> shardPaths = new ArrayList<>(shardCount);
+    AtomicInteger threadCounter = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(shardCount, Runtime.getRuntime().availableProcessors()),
+        r -> new Thread(r, "verifier-shard-" + threadCounter.incrementAndGet()));
+    try {
+      split(shardPaths);
+      LOGGER.debug("Split journal into {} shard(s) in {} s", shardCount, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - before));
+
+      List<Future<List<String>>> futures = new ArrayList<>(shardCount);
+      List<Map<String, Set<RecordValue>>> shardResults = new ArrayList<>(shardCount);
+      for (Path shardPath : shardPaths) {
+        Map<String, Set<RecordValue>> shardResult = new HashMap<>();
+        shardResults.add(shardResult);
+        futures.add(executor.submit(() -> new Verifier(shardPath.toFile(), windowSize, operationParser).verify(results -> {
+          shardResult.putAll(results);
+          return Collections.emptyList();
+        })));
+      }
+
+      List<String> errors = new ArrayList<>();
+      for (Future<List<String>> future : futures) {
+        errors.addAll(future.get());
+      }
+      Map<String, Set<RecordValue>> results = new HashMap<>();
+      shardResults.forEach(results::putAll);
+      errors.addAll(extraCheck.apply(results));
+
+      LOGGER.info("Sharded verification done in {} s - {} error(s)", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - before), errors.size());
+      return errors;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+      for (Path shardPath : shardPaths) {
+        try {
+          Files.deleteIfExists(shardPath);
+        } catch (IOException e) {
+          LOGGER.warn("Failed to delete shard file {}", shardPath, e);
+        }
+      }
+    }
+  }
+
+  private void split(List<Path> shardPaths) throws IOException {
+    Files.createDirectories(workDirectory);
+    Writer[] writers = new Writer[shardCount];
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        Path shardPath = Files.createTempFile(workDirectory, "shard-" + i + "-", ".journal");
+        shardPaths.add(shardPath);
+        writers[i] = Files.newBufferedWriter(shardPath);
+      }
+
+      try (Stream<String> lines = journalPaths.length == 1 ? Files.lines(journalPaths[0]) : new JournalMerger(journalPaths).merge()) {
+        Iterator<String> it = lines.iterator();
+        while (it.hasNext()) {
+          String line = it.next();
+          Operation operation = operationParser.apply(line);
+          if (!(operation instanceof KeyOperation)) {
+            throw new IllegalArgumentException("Sharded verification only supports key operations, found : " + operation);
+          }
+          Writer writer = writers[Math.floorMod(((KeyOperation) operation).getKey().hashCode(), shardCount)];
+          writer.write(line);
+          writer.write('\n');
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    } finally {
+      for (Writer writer : writers) {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+  }
+}
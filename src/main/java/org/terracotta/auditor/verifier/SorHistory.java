@@ -15,154 +15,195 @@
  */
 package org.terracotta.auditor.verifier;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * @author Ludovic Orban
  */
 public class SorHistory {
 
-  private int committedMax = 0;
-  private int intermediateMax = 0;
-  private long atCount = 0;
-  private long atSum = 0;
-  private long overlappingCount = 0;
-  private long overlappingSum = 0;
+  private final HistorySegment[] segments;
+  private final boolean keyOnly;
 
-  private final Map<String, SortedMap<Interval, Values>> history = new HashMap<>();
+  public SorHistory() {
+    this(1);
+  }
 
-  public void add(String key, long beforeTs, long afterTs, Set<RecordValue> committedValues, Set<RecordValue> intermediateValues) {
-    SortedMap<Interval, Values> intervalSetSortedMap = history.get(key);
-    if (intervalSetSortedMap == null) {
-      Interval interval = new Interval(beforeTs, afterTs);
-      SortedMap<Interval, Values> map = new TreeMap<>();
-      map.put(interval, new Values(committedValues, intermediateValues));
-      history.put(key, map);
-    } else {
-      Interval interval = new Interval(beforeTs, afterTs);
-      intervalSetSortedMap.put(interval, new Values(committedValues, intermediateValues));
-    }
+  /**
+   * @param segmentCount the number of slices the keys are split into. Each slice can be written to by a different
+   *                     thread, and queries spanning all keys are answered by querying all slices in parallel.
+   */
+  public SorHistory(int segmentCount) {
+    this(segmentCount, false);
+  }
 
-    if (committedValues.size() > committedMax) {
-      committedMax = committedValues.size();
+  /**
+   * @param keyOnly true to only keep the head of every key, for journals without non-key operations. The memory used
+   *                then only depends on the number of keys, but the time queries cannot be answered.
+   */
+  public SorHistory(int segmentCount, boolean keyOnly) {
+    if (segmentCount <= 0) {
+      throw new IllegalArgumentException("segmentCount must be positive : " + segmentCount);
     }
-    if (intermediateValues.size() > intermediateMax) {
-      intermediateMax = intermediateValues.size();
+    this.keyOnly = keyOnly;
+    this.segments = new HistorySegment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new HistorySegment(keyOnly);
     }
   }
 
-  public Set<RecordValue> getHeadOf(String key) {
-    SortedMap<Interval, Values> intervalListSortedMap = history.get(key);
-    if (intervalListSortedMap == null) {
-      return Collections.singleton(RecordValue.ABSENT);
+  public boolean isKeyOnly() {
+    return keyOnly;
+  }
+
+  private void checkTimeQueries() {
+    if (keyOnly) {
+      throw new IllegalStateException("Key-only history only holds the heads of the keys");
     }
-    Interval lastKey = intervalListSortedMap.lastKey();
-    return intervalListSortedMap.get(lastKey).getCommittedValues();
+  }
+
+  int segmentIndexOf(String key) {
+    return Math.floorMod(key.hashCode(), segments.length);
+  }
+
+  private HistorySegment segmentOf(String key) {
+    return segments[segmentIndexOf(key)];
+  }
+
+  public void add(String key, long beforeTs, long afterTs, Set<RecordValue> committedValues, Set<RecordValue> intermediateValues) {
+    segmentOf(key).add(key, beforeTs, afterTs, committedValues, intermediateValues);
+  }
+
+  public Set<RecordValue> getHeadOf(String key) {
+    return segmentOf(key).getHeadOf(key);
   }
 
   public Map<String, Set<RecordValue>> getHeads() {
     Map<String, Set<RecordValue>> result = new HashMap<>();
-
-    for (String key : history.keySet()) {
-      SortedMap<Interval, Values> intervalSetSortedMap = history.get(key);
-      Interval interval = intervalSetSortedMap.lastKey();
-      Set<RecordValue> recordValues = intervalSetSortedMap.get(interval).getCommittedValues();
-      result.put(key, recordValues);
+    for (HistorySegment segment : segments) {
+      segment.collectHeads(result);
     }
-
     return result;
   }
 
-  public void deleteUntil(long ts) {
-    for (Map.Entry<String, SortedMap<Interval, Values>> stringSortedMapEntry : history.entrySet()) {
-      SortedMap<Interval, Values> value = stringSortedMapEntry.getValue();
-
-      Iterator<Map.Entry<Interval, Values>> iterator = value.entrySet().iterator();
-      // delete everything before the arg TS, but the last value before that TS, hence save the last deleted one to re-add it
-      Map.Entry<Interval, Values> lastEntry = null;
-      while (iterator.hasNext()) {
-        Map.Entry<Interval, Values> next = iterator.next();
-        Interval interval = next.getKey();
-        if (interval.endTs < ts && iterator.hasNext()) {
-          lastEntry = next;
-          iterator.remove();
-        } else {
-          if (lastEntry != null) {
-            value.put(lastEntry.getKey(), lastEntry.getValue());
-          }
-          break;
-        }
-      }
+  /**
+   * Move the low watermark forward: no query will be made before the TS anymore, so the history which only matters to
+   * earlier queries can be collected.
+   */
+  public void advanceLowWatermark(long ts) {
+    for (HistorySegment segment : segments) {
+      segment.advanceLowWatermark(ts);
     }
   }
 
-  public Map<String, Set<RecordValue>> getAt(long ts) {
-    Map<String, Set<RecordValue>> at = new HashMap<>();
+  /**
+   * Same as {@link #advanceLowWatermark(long)} for a single segment, so that it can be done by the thread writing to it.
+   */
+  void advanceLowWatermark(int segmentIndex, long ts) {
+    segments[segmentIndex].advanceLowWatermark(ts);
+  }
 
-    for (Map.Entry<String, SortedMap<Interval, Values>> stringSortedMapEntry : history.entrySet()) {
-      String key = stringSortedMapEntry.getKey();
-      SortedMap<Interval, Values> intervalSetSortedMap = stringSortedMapEntry.getValue();
+  public long getLowWatermark() {
+    return segments[0].getLowWatermark();
+  }
 
-      int counter = 0;
-      for (Map.Entry<Interval, Values> intervalSetEntry : intervalSetSortedMap.entrySet()) {
-        counter++;
-        Interval interval = intervalSetEntry.getKey();
-        Set<RecordValue> values = intervalSetEntry.getValue().getCommittedValues();
+  public Map<String, Set<RecordValue>> getAt(long ts) {
+    checkTimeQueries();
+    return gather(segment -> segment.getAt(ts));
+  }
 
-        if (interval.endTs >= ts) {
-          break;
-        }
+  public Map<String, Set<RecordValue>> getEverythingOverlapping(long startTs, long afterTs) {
+    checkTimeQueries();
+    return gather(segment -> segment.getEverythingOverlapping(startTs, afterTs));
+  }
 
-        at.put(key, values);
-      }
-      atCount++;
-      atSum += counter;
+  /**
+   * @return how many keys are definitely and possibly present according to the values committed before the TS, i.e.:
+   * what {@link #getAt(long)} returns, without visiting the keys.
+   */
+  public PresentKeyCount getPresentKeyCountAt(long ts) {
+    checkTimeQueries();
+    int definitelyPresent = 0;
+    int possiblyPresent = 0;
+    for (HistorySegment segment : segments) {
+      PresentKeyCount count = segment.getPresentKeyCountAt(ts);
+      definitelyPresent += count.getDefinitelyPresent();
+      possiblyPresent += count.getPossiblyPresent();
     }
+    return new PresentKeyCount(definitelyPresent, possiblyPresent);
+  }
 
-    at.entrySet().removeIf(next -> next.getValue().size() == 1 && next.getValue().iterator().next().isAbsent());
+  /**
+   * Same as {@link #getAt(long)}, but only looking at the given keys.
+   */
+  public Map<String, Set<RecordValue>> getAt(long ts, Collection<String> keys) {
+    checkTimeQueries();
+    return gather(keys, (segment, segmentKeys) -> segment.getAt(ts, segmentKeys));
+  }
 
-    return at;
+  /**
+   * Same as {@link #getEverythingOverlapping(long, long)}, but only looking at the given keys.
+   */
+  public Map<String, Set<RecordValue>> getEverythingOverlapping(long startTs, long afterTs, Collection<String> keys) {
+    checkTimeQueries();
+    return gather(keys, (segment, segmentKeys) -> segment.getEverythingOverlapping(startTs, afterTs, segmentKeys));
   }
 
-  public Map<String, Set<RecordValue>> getEverythingOverlapping(long startTs, long afterTs) {
-    Map<String, Set<RecordValue>> overlapping = new HashMap<>();
-
-    for (Map.Entry<String, SortedMap<Interval, Values>> stringSortedMapEntry : history.entrySet()) {
-      String key = stringSortedMapEntry.getKey();
-      SortedMap<Interval, Values> intervalSetSortedMap = stringSortedMapEntry.getValue();
-
-      int counter = 0;
-      for (Map.Entry<Interval, Values> intervalSetEntry : intervalSetSortedMap.entrySet()) {
-        counter++;
-        Interval interval = intervalSetEntry.getKey();
-        Set<RecordValue> value = intervalSetEntry.getValue().getIntermediateValues();
-
-        if (interval.endTs < startTs) {
-          continue;
-        }
-        if (interval.startTs > afterTs) {
-          break;
-        }
-
-        if (overlapping.putIfAbsent(key, value) != null) {
-          Set<RecordValue> recordValues = overlapping.get(key);
-          recordValues.addAll(value);
-        }
+  private Map<String, Set<RecordValue>> gather(Collection<String> keys, BiFunction<HistorySegment, Collection<String>, Map<String, Set<RecordValue>>> query) {
+    if (segments.length == 1) {
+      return query.apply(segments[0], keys);
+    }
+    List<List<String>> keysBySegment = new ArrayList<>(segments.length);
+    for (int i = 0; i < segments.length; i++) {
+      keysBySegment.add(new ArrayList<>());
+    }
+    for (String key : keys) {
+      keysBySegment.get(segmentIndexOf(key)).add(key);
+    }
+    // only a few keys are looked at, querying the segments one after the other is cheaper than forking
+    Map<String, Set<RecordValue>> result = new HashMap<>();
+    for (int i = 0; i < segments.length; i++) {
+      if (!keysBySegment.get(i).isEmpty()) {
+        result.putAll(query.apply(segments[i], keysBySegment.get(i)));
       }
-      overlappingCount++;
-      overlappingSum += counter;
     }
+    return result;
+  }
 
-    return overlapping;
+  private Map<String, Set<RecordValue>> gather(Function<HistorySegment, Map<String, Set<RecordValue>>> query) {
+    if (segments.length == 1) {
+      return query.apply(segments[0]);
+    }
+    // segments hold disjoint keys, so their results can simply be put together
+    return Arrays.stream(segments).parallel().map(query).reduce((m1, m2) -> {
+      m1.putAll(m2);
+      return m1;
+    }).orElseGet(HashMap::new);
   }
 
   public String averages() {
+    int committedMax = 0;
+    int intermediateMax = 0;
+    long atCount = 0;
+    long atSum = 0;
+    long overlappingCount = 0;
+    long overlappingSum = 0;
+    for (HistorySegment segment : segments) {
+      committedMax = Math.max(committedMax, segment.getCommittedMax());
+      intermediateMax = Math.max(intermediateMax, segment.getIntermediateMax());
+      atCount += segment.getAtCount();
+      atSum += segment.getAtSum();
+      overlappingCount += segment.getOverlappingCount();
+      overlappingSum += segment.getOverlappingSum();
+    }
     return "at avg: " + avg(atCount, atSum) + " overlapping avg: " + avg(overlappingCount, overlappingSum) + " committed max: " + committedMax + " intermediate max: " + intermediateMax;
   }
 
@@ -170,33 +211,4 @@ public class SorHistory {
     return count == 0 ? Float.NaN : (float)sum / count;
   }
 
-  static class Interval implements Comparable<Interval> {
-    private long startTs;
-    private long endTs;
-
-    public Interval(long startTs, long endTs) {
-      this.startTs = startTs;
-      this.endTs = endTs;
-    }
-
-    @Override
-    public int hashCode() {
-      return (int) (startTs + endTs);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (obj instanceof Interval) {
-        Interval other = (Interval) obj;
-        return other.startTs == startTs && other.endTs == endTs;
-      }
-      return false;
-    }
-
-    @Override
-    public int compareTo(Interval other) {
-      return Long.compare(endTs, other.endTs);
-    }
-  }
-
 }
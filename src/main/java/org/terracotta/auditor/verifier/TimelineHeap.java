@@ -0,0 +1,129 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of the non-empty key timelines, ordered by a {@link SchedulingPolicy} then by creation order. Each
+ * timeline remembers its position in the heap so that its priority can be updated in place after it changed.
+ */
+class TimelineHeap {
+
+  private final SchedulingPolicy policy;
+  private KeyTimeline[] heap = new KeyTimeline[16];
+  private int size = 0;
+
+  TimelineHeap(SchedulingPolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * Insert, reposition or remove the timeline according to its current state.
+   */
+  void update(KeyTimeline timeline) {
+    int index = timeline.heapIndex;
+    if (timeline.isEmpty()) {
+      if (index >= 0) {
+        removeAt(index);
+      }
+    } else if (index < 0) {
+      if (size == heap.length) {
+        heap = Arrays.copyOf(heap, size * 2);
+      }
+      place(timeline, size++);
+      siftUp(timeline.heapIndex);
+    } else if (!siftUp(index)) {
+      siftDown(index);
+    }
+  }
+
+  KeyTimeline peek() {
+    return size == 0 ? null : heap[0];
+  }
+
+  /**
+   * Total order of the timelines, so that the same timeline is picked however the keys are partitioned.
+   */
+  int compare(KeyTimeline t1, KeyTimeline t2) {
+    int result = policy.compare(t1, t2);
+    if (result == 0) {
+      result = Long.compare(t1.headEndTS(), t2.headEndTS());
+    }
+    return result != 0 ? result : Long.compare(t1.sequence, t2.sequence);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void removeAt(int index) {
+    KeyTimeline removed = heap[index];
+    removed.heapIndex = -1;
+    size--;
+    if (index != size) {
+      place(heap[size], index);
+      heap[size] = null;
+      if (!siftUp(index)) {
+        siftDown(index);
+      }
+    } else {
+      heap[size] = null;
+    }
+  }
+
+  private boolean siftUp(int index) {
+    KeyTimeline timeline = heap[index];
+    int start = index;
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (compare(timeline, heap[parent]) >= 0) {
+        break;
+      }
+      place(heap[parent], index);
+      index = parent;
+    }
+    place(timeline, index);
+    return index != start;
+  }
+
+  private void siftDown(int index) {
+    KeyTimeline timeline = heap[index];
+    int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      int right = child + 1;
+      if (right < size && compare(heap[right], heap[child]) < 0) {
+        child = right;
+      }
+      if (compare(timeline, heap[child]) <= 0) {
+        break;
+      }
+      place(heap[child], index);
+      index = child;
+    }
+    place(timeline, index);
+  }
+
+  private void place(KeyTimeline timeline, int index) {
+    heap[index] = timeline;
+    timeline.heapIndex = index;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+/**
+ * Entries indexed by TS, stored as columns of plain arrays with a moving first index. Entries mostly come in TS order,
+ * so the ones appended out of order are only merged in by {@link #sort()}, which costs as much as how far out of order
+ * they came. Entries are never removed one by one, they are dropped from the front.
+ * <p>
+ * The TS column lives here, subclasses keep their other columns in arrays of the same capacity and move them along.
+ * Indices are absolute: the live entries go from {@link #first} included to {@link #end} excluded.
+ */
+abstract class TimestampLog {
+
+  long[] timestamps;
+  int first = 0;
+  // the entries from the first one up to this one are sorted, the following ones were appended out of order
+  int sortedEnd = 0;
+  int end = 0;
+
+  protected TimestampLog(int capacity) {
+    this.timestamps = new long[capacity];
+  }
+
+  int size() {
+    return end - first;
+  }
+
+  /**
+   * Append an entry, whose other columns must then be set at the returned index.
+   */
+  int append(long ts) {
+    makeRoom();
+    if (sortedEnd == end && (end == first || timestamps[end - 1] <= ts)) {
+      sortedEnd++;
+    }
+    timestamps[end] = ts;
+    return end++;
+  }
+
+  /**
+   * @return the index of the first sorted entry at or after the TS, or {@link #sortedEnd} if there is none.
+   */
+  int ceiling(long ts) {
+    int low = first;
+    int high = sortedEnd;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < ts) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Merge the entries appended out of order into the sorted ones. Only the sorted entries at or after the earliest of
+   * them have to move. Concurrent readers may get there at the same time, hence the lock.
+   */
+  synchronized void sort() {
+    if (sortedEnd == end) {
+      return;
+    }
+    int[] tailOrder = sortedOrder(timestamps, sortedEnd, end);
+    int from = ceiling(timestamps[tailOrder[0]]);
+
+    // merge backwards, the sorted entries moving up to make room for the ones appended out of order
+    int[] sources = new int[end - from];
+    int sorted = sortedEnd - 1;
+    int tail = tailOrder.length - 1;
+    for (int i = end - 1; i >= from; i--) {
+      if (sorted >= from && (tail < 0 || timestamps[sorted] > timestamps[tailOrder[tail]])) {
+        sources[i - from] = sorted--;
+      } else {
+        sources[i - from] = tailOrder[tail--];
+      }
+    }
+
+    timestamps = reorder(timestamps, from, sources);
+    reorder(from, sources);
+    sortedEnd = end;
+  }
+
+  /**
+   * Move the entries of the other columns from {@code from} on: the entry at {@code from + i} is the one that was at
+   * {@code sources[i]}. {@link #sortedEnd} still tells which entries were sorted before.
+   */
+  abstract void reorder(int from, int[] sources);
+
+  /**
+   * Move the live entries of the other columns to the front of new arrays of the given capacity.
+   */
+  abstract void compact(int capacity);
+
+  /**
+   * Drop the entries before the given index.
+   */
+  void dropBefore(int index) {
+    first = index;
+  }
+
+  private void makeRoom() {
+    if (end < timestamps.length) {
+      return;
+    }
+    // reclaim the dropped front before growing
+    int size = size();
+    int capacity = size * 2 < timestamps.length ? timestamps.length : timestamps.length * 2;
+    timestamps = compact(timestamps, new long[capacity]);
+    compact(capacity);
+    sortedEnd -= first;
+    end = size;
+    first = 0;
+  }
+
+  /**
+   * @return the new array, holding the live entries of the column at its front.
+   */
+  <T> T compact(T column, T to) {
+    System.arraycopy(column, first, to, 0, size());
+    return to;
+  }
+
+  static long[] reorder(long[] column, int from, int[] sources) {
+    long[] moved = new long[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      moved[i] = column[sources[i]];
+    }
+    System.arraycopy(moved, 0, column, from, moved.length);
+    return column;
+  }
+
+  static int[] reorder(int[] column, int from, int[] sources) {
+    int[] moved = new int[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      moved[i] = column[sources[i]];
+    }
+    System.arraycopy(moved, 0, column, from, moved.length);
+    return column;
+  }
+
+  static <T> T[] reorder(T[] column, int from, int[] sources) {
+    Object[] moved = new Object[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      moved[i] = column[sources[i]];
+    }
+    System.arraycopy(moved, 0, column, from, moved.length);
+    return column;
+  }
+
+  /**
+   * @return the indices between {@code from} included and {@code to} excluded, in the order of their timestamps.
+   */
+  static int[] sortedOrder(long[] timestamps, int from, int to) {
+    int size = to - from;
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = from + i;
+    }
+    // bottom-up merge sort, which is stable
+    int[] buffer = new int[size];
+    for (int width = 1; width < size; width *= 2) {
+      for (int low = 0; low < size - width; low += 2 * width) {
+        int mid = low + width;
+        int high = Math.min(low + 2 * width, size);
+        int left = low;
+        int right = mid;
+        for (int i = low; i < high; i++) {
+          if (right >= high || (left < mid && timestamps[order[left]] <= timestamps[order[right]])) {
+            buffer[i] = order[left++];
+          } else {
+            buffer[i] = order[right++];
+          }
+        }
+        System.arraycopy(buffer, low, order, low, high - low);
+      }
+    }
+    return order;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+/**
+ * An operation group whose outcome could not be determined within the {@link ExplorationBudget}, its possible values
+ * were widened to both absent and unknown present.
+ */
+public class UndecidedGroup {
+
+  private final String key;
+  private final long startTs;
+  private final long endTs;
+  private final int operationCount;
+  private final long exploredStates;
+  private final String reason;
+
+  UndecidedGroup(String key, long startTs, long endTs, int operationCount, long exploredStates, String reason) {
+    this.key = key;
+    this.startTs = startTs;
+    this.endTs = endTs;
+    this.operationCount = operationCount;
+    this.exploredStates = exploredStates;
+    this.reason = reason;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public long getStartTs() {
+    return startTs;
+  }
+
+  public long getEndTs() {
+    return endTs;
+  }
+
+  public int getOperationCount() {
+    return operationCount;
+  }
+
+  public long getExploredStates() {
+    return exploredStates;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return "Undecided group on key " + key + " startTs=" + startTs + " endTs=" + endTs + " : " + operationCount +
+        " operations, " + exploredStates + " explored states - " + reason;
+  }
+}
@@ -15,16 +15,34 @@
  */
 package org.terracotta.auditor.verifier;
 
+import java.util.Collections;
+import java.util.List;
+
 public class VerificationException extends Exception {
 
   private final StepResult stepResult;
+  private final List<String> messages;
 
   public VerificationException(String msg, StepResult stepResult) {
     super(msg);
     this.stepResult = stepResult;
+    this.messages = Collections.singletonList(msg);
+  }
+
+  /**
+   * Report the errors of multiple steps executed at once.
+   */
+  public VerificationException(List<String> messages) {
+    super(String.join("\n", messages));
+    this.stepResult = null;
+    this.messages = messages;
   }
 
   public StepResult getStepResult() {
     return stepResult;
   }
+
+  public List<String> getMessages() {
+    return messages;
+  }
 }
@@ -17,36 +17,79 @@ package org.terracotta.auditor.verifier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terracotta.auditor.journal.merge.JournalMerger;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class Verifier {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Verifier.class);
 
-  private final Reader journalReader;
+  private final Stream<String> journalLines;
   private final int windowSize;
   private final Function<String, Operation> operationParser;
+  private final VerifierConfiguration configuration;
+  private List<UndecidedGroup> undecidedGroups = Collections.emptyList();
 
   public Verifier(File journalFile, int windowSize, Function<String, Operation> operationParser) throws IOException {
-    this(new FileReader(journalFile), windowSize, operationParser);
+    this(journalFile, windowSize, operationParser, new VerifierConfiguration());
+  }
+
+  public Verifier(File journalFile, int windowSize, Function<String, Operation> operationParser, VerifierConfiguration configuration) throws IOException {
+    this(new FileReader(journalFile), windowSize, operationParser, configuration);
   }
 
   public Verifier(Reader journalReader, int windowSize, Function<String, Operation> operationParser) throws IOException {
-    this.journalReader = journalReader;
+    this(journalReader, windowSize, operationParser, new VerifierConfiguration());
+  }
+
+  public Verifier(Reader journalReader, int windowSize, Function<String, Operation> operationParser, VerifierConfiguration configuration) throws IOException {
+    this(linesOf(journalReader), windowSize, operationParser, configuration);
+  }
+
+  /**
+   * Verify multiple journals, e.g.: one per client, at once. The journals are merged on the fly by
+   * {@link JournalMerger} instead of having to be merged into an intermediate file first.
+   */
+  public Verifier(Path[] journalPaths, int windowSize, Function<String, Operation> operationParser) {
+    this(journalPaths, windowSize, operationParser, new VerifierConfiguration());
+  }
+
+  public Verifier(Path[] journalPaths, int windowSize, Function<String, Operation> operationParser, VerifierConfiguration configuration) {
+    this(new JournalMerger(journalPaths).merge(), windowSize, operationParser, configuration);
+  }
+
+  private Verifier(Stream<String> journalLines, int windowSize, Function<String, Operation> operationParser, VerifierConfiguration configuration) {
+    this.journalLines = journalLines;
     this.windowSize = windowSize;
     this.operationParser = operationParser;
+    this.configuration = configuration;
+  }
+
+  private static Stream<String> linesOf(Reader journalReader) {
+    BufferedReader br = new BufferedReader(journalReader);
+    return br.lines().onClose(() -> {
+      try {
+        br.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
   }
 
   public List<String> verify() {
@@ -54,18 +97,15 @@ public class Verifier {
   }
 
   public List<String> verify(Function<Map<String, Set<RecordValue>>, List<String>> extraCheck) {
-    try {
+    try (GlobalTimeline timeline = new GlobalTimeline(windowSize, configuration)) {
       List<String> errors = new ArrayList<>();
       long before = System.nanoTime();
       long lineCount = 0L;
-      GlobalTimeline timeline = new GlobalTimeline(windowSize);
 
-      try (BufferedReader br = new BufferedReader(journalReader)) {
-        while (true) {
-          String line = br.readLine();
-          if (line == null) {
-            break;
-          }
+      try (Stream<String> lines = journalLines) {
+        Iterator<String> it = lines.iterator();
+        while (it.hasNext()) {
+          String line = it.next();
           lineCount++;
 
           Operation operation = operationParser.apply(line);
@@ -76,7 +116,7 @@ public class Verifier {
             try {
               timeline.step();
             } catch (VerificationException e) {
-              errors.add(e.getMessage());
+              errors.addAll(e.getMessages());
             }
           }
 
@@ -92,20 +132,32 @@ public class Verifier {
         try {
           timeline.step();
         } catch (VerificationException e) {
-          errors.add(e.getMessage());
+          errors.addAll(e.getMessages());
         }
       }
 
+      undecidedGroups = timeline.getUndecidedGroups();
+      if (configuration.getReplayCacheSize() > 0) {
+        LOGGER.debug(timeline.replayCacheStats());
+      }
       Map<String, Set<RecordValue>> results = timeline.getResults();
       List<String> extraErrors = extraCheck.apply(results);
       errors.addAll(extraErrors);
 
       long after = System.nanoTime();
-      LOGGER.info("Verification of {} entries done in {} s - {} error(s)", lineCount, TimeUnit.NANOSECONDS.toSeconds(after - before), errors.size());
+      LOGGER.info("Verification of {} entries done in {} s - {} error(s), {} undecided group(s)", lineCount, TimeUnit.NANOSECONDS.toSeconds(after - before), errors.size(), undecidedGroups.size());
       return errors;
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    } catch (UncheckedIOException e) {
+      throw new RuntimeException(e.getCause());
     }
   }
 
+  /**
+   * @return the operation groups of the last verification which went over the {@link ExplorationBudget}. The values
+   * of their key were widened to absent or unknown present, so errors may have gone unnoticed in their time range.
+   */
+  public List<UndecidedGroup> getUndecidedGroups() {
+    return undecidedGroups;
+  }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+/**
+ * Tuning knobs of the {@link Verifier}. The defaults match a plain single-threaded verification.
+ */
+public class VerifierConfiguration {
+
+  private int parallelism = 1;
+  private SchedulingPolicy schedulingPolicy = SchedulingPolicy.largestFirst();
+  private ExplorationBudget explorationBudget = ExplorationBudget.UNLIMITED;
+  private int replayCacheSize = 0;
+  private int nonKeyParallelism = 1;
+  private boolean keyOnly = false;
+
+  /**
+   * Set the number of worker threads replaying key operations. Keys are partitioned by hash across the workers, each
+   * of them owning the history of its partition. The verifier thread still picks the groups to step, the workers
+   * replay them in batches and only wait for each other when the whole history must be read.
+   */
+  public VerifierConfiguration parallelism(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive : " + parallelism);
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set the policy picking the key timeline to step next, {@link SchedulingPolicy#largestFirst()} by default.
+   */
+  public VerifierConfiguration schedulingPolicy(SchedulingPolicy schedulingPolicy) {
+    if (schedulingPolicy == null) {
+      throw new NullPointerException("schedulingPolicy must not be null");
+    }
+    this.schedulingPolicy = schedulingPolicy;
+    return this;
+  }
+
+  public SchedulingPolicy getSchedulingPolicy() {
+    return schedulingPolicy;
+  }
+
+  /**
+   * Set the limits of the exploration of a single operation group, {@link ExplorationBudget#UNLIMITED} by default.
+   */
+  public VerifierConfiguration explorationBudget(ExplorationBudget explorationBudget) {
+    if (explorationBudget == null) {
+      throw new NullPointerException("explorationBudget must not be null");
+    }
+    this.explorationBudget = explorationBudget;
+    return this;
+  }
+
+  public ExplorationBudget getExplorationBudget() {
+    return explorationBudget;
+  }
+
+  /**
+   * Set the number of group replay outcomes kept per key partition, 0 (the default) disables caching. The cache reuses
+   * the outcome of a group for any other group of the same shape, which is only correct when key operations behave
+   * according to their class, result and timestamps alone and only ever compare a concrete record value with their
+   * own result.
+   */
+  public VerifierConfiguration replayCacheSize(int replayCacheSize) {
+    if (replayCacheSize < 0) {
+      throw new IllegalArgumentException("replayCacheSize must not be negative : " + replayCacheSize);
+    }
+    this.replayCacheSize = replayCacheSize;
+    return this;
+  }
+
+  public int getReplayCacheSize() {
+    return replayCacheSize;
+  }
+
+  /**
+   * Set the number of worker threads verifying non-key operations which cannot mutate the history. Such operations are
+   * verified concurrently once they are ready, while key operations are not stepped; their errors are still reported
+   * in start TS order.
+   */
+  public VerifierConfiguration nonKeyParallelism(int nonKeyParallelism) {
+    if (nonKeyParallelism <= 0) {
+      throw new IllegalArgumentException("nonKeyParallelism must be positive : " + nonKeyParallelism);
+    }
+    this.nonKeyParallelism = nonKeyParallelism;
+    return this;
+  }
+
+  public int getNonKeyParallelism() {
+    return nonKeyParallelism;
+  }
+
+  /**
+   * Declare that the journal only contains key operations. Only the current value of every key is then kept instead
+   * of its whole history, and the values a key goes through within a group are not collected. A non-key operation
+   * makes the verification fail with an {@link IllegalStateException}.
+   */
+  public VerifierConfiguration keyOnly(boolean keyOnly) {
+    this.keyOnly = keyOnly;
+    return this;
+  }
+
+  public boolean isKeyOnly() {
+    return keyOnly;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.terracotta.auditor.journal.FileJournal;
+import org.terracotta.auditor.operations.Operations;
+import org.terracotta.auditor.verifier.RecordValue;
+import org.terracotta.auditor.verifier.ShardedVerifier;
+import org.terracotta.auditor.verifier.Verifier;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardedVerifierTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void sameResultsAsSingleVerifier() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (FileJournal journal = new FileJournal(file)) {
+      for (int i = 0; i < 100; i++) {
+        String key = Integer.toString(i % 17);
+        long ts = i * 10;
+        journal.log(ts, ts + 5, "Add", key, Boolean.toString(i < 17));
+        journal.log(ts + 6, ts + 8, "Get", key, "V");
+      }
+      // two concurrent successful adds on an already present key
+      journal.log(2000, 2010, "Add", "3", "true");
+      journal.log(2001, 2011, "Add", "3", "true");
+      journal.log(2020, 2030, "Delete", "42", "false");
+    }
+
+    Map<String, Set<RecordValue>> expectedResults = new HashMap<>();
+    List<String> expectedErrors = new Verifier(file, 10, Operations.parser()).verify(results -> {
+      expectedResults.putAll(results);
+      return Collections.emptyList();
+    });
+
+    Map<String, Set<RecordValue>> shardedResults = new HashMap<>();
+    List<String> errors = new ShardedVerifier(file, temporaryFolder.newFolder(), 4, 10, Operations.parser()).verify(results -> {
+      shardedResults.putAll(results);
+      return Collections.emptyList();
+    });
+
+    assertThat(errors.size(), is(1));
+    assertThat(errors.size(), is(expectedErrors.size()));
+    assertThat(shardedResults, is(expectedResults));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonKeyOperations() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (FileJournal journal = new FileJournal(file)) {
+      journal.log(1, 2, "Add", "1", "true");
+      journal.log(3, 4, "Count", "", "1");
+    }
+
+    new ShardedVerifier(file, temporaryFolder.newFolder(), 2, 10, Operations.parser()).verify();
+  }
+}
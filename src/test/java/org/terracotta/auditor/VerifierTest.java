@@ -16,19 +16,33 @@
 package org.terracotta.auditor;
 
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.terracotta.auditor.journal.FileJournal;
 import org.terracotta.auditor.operations.Operations;
+import org.terracotta.auditor.verifier.ExplorationBudget;
 import org.terracotta.auditor.verifier.RecordValue;
+import org.terracotta.auditor.verifier.UndecidedGroup;
 import org.terracotta.auditor.verifier.Verifier;
+import org.terracotta.auditor.verifier.VerifierConfiguration;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -38,6 +52,9 @@ import static org.junit.Assert.assertThat;
  */
 public class VerifierTest {
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void orderedConcurrentAddNoError() throws Exception {
     String journalContents =
@@ -230,6 +247,159 @@ public class VerifierTest {
     assertThat(errors, is(empty()));
   }
 
+  @Test
+  public void nonKeyOperationsAreVerifiedWhileStreaming() throws Exception {
+    StringBuilder journalContents = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      long ts = i * 10;
+      journalContents.append(ts).append(";").append(ts + 2).append(";Add;").append(i % 7).append(";true\n");
+      journalContents.append(ts + 3).append(";").append(ts + 4).append(";Count;;").append(i == 150 ? 0 : 1).append("\n");
+      journalContents.append(ts + 5).append(";").append(ts + 6).append(";Delete;").append(i % 7).append(";true\n");
+    }
+
+    Verifier verifier = new Verifier(new StringReader(journalContents.toString()), 10, Operations.parser());
+
+    List<String> errors = verifier.verify();
+    assertThat(errors.size(), is(1));
+    assertThat(errors.get(0), containsString("startTs=1503"));
+  }
+
+  @Test
+  public void readOnlyNonKeyOperationsAreVerifiedConcurrently() throws Exception {
+    StringBuilder journalContents = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      long ts = i * 10;
+      journalContents.append(ts).append(";").append(ts + 2).append(";Add;").append(i % 7).append(";true\n");
+      journalContents.append(ts + 3).append(";").append(ts + 4).append(";Count;;").append(i % 100 == 42 ? 0 : 1).append("\n");
+      journalContents.append(ts + 5).append(";").append(ts + 6).append(";Delete;").append(i % 7).append(";true\n");
+    }
+
+    List<String> sequentialErrors = new Verifier(new StringReader(journalContents.toString()), 1000, Operations.parser()).verify();
+    List<String> concurrentErrors = new Verifier(new StringReader(journalContents.toString()), 1000, Operations.parser(), new VerifierConfiguration().nonKeyParallelism(4)).verify();
+
+    assertThat(sequentialErrors.size(), is(5));
+    assertThat(concurrentErrors, is(sequentialErrors));
+  }
+
+  @Test
+  public void keyOnlyVerification() throws Exception {
+    StringBuilder journalContents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      journalContents.append(i * 10).append(";").append(i * 10 + 5).append(";Add;").append(i % 17).append(";").append(i < 17).append("\n");
+      journalContents.append(i * 10 + 1).append(";").append(i * 10 + 6).append(";Delete;").append(i % 13).append(";").append(i == 20).append("\n");
+    }
+
+    Map<String, Set<RecordValue>> fullResults = new HashMap<>();
+    List<String> fullErrors = new Verifier(new StringReader(journalContents.toString()), 10, Operations.parser()).verify(results -> {
+      fullResults.putAll(results);
+      return Collections.emptyList();
+    });
+    List<String> keyOnlyErrors = new Verifier(new StringReader(journalContents.toString()), 10, Operations.parser(), new VerifierConfiguration().keyOnly(true))
+        .verify(results -> {
+          assertThat(results, is(fullResults));
+          return Collections.emptyList();
+        });
+
+    assertThat(keyOnlyErrors, is(fullErrors));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void keyOnlyVerificationRejectsNonKeyOperations() throws Exception {
+    String journalContents =
+            "1;2;Add;1;true\n" +
+            "3;4;Count;;1";
+
+    new Verifier(new StringReader(journalContents), 10, Operations.parser(), new VerifierConfiguration().keyOnly(true)).verify();
+  }
+
+  @Test
+  public void multipleJournals() throws Exception {
+    File file1 = temporaryFolder.newFile();
+    File file2 = temporaryFolder.newFile();
+
+    try (FileJournal journal1 = new FileJournal(file1);
+         FileJournal journal2 = new FileJournal(file2)) {
+      journal1.log(1, 2, "Add", "1", "true");
+      journal2.log(1, 3, "Add", "1", "false");
+      journal1.log(4, 5, "Delete", "1", "true");
+      journal2.log(6, 7, "Add", "2", "true");
+      journal1.log(8, 9, "Count", "", "1");
+    }
+
+    Verifier verifier = new Verifier(new Path[] { file1.toPath(), file2.toPath() }, 10, Operations.parser());
+
+    List<String> errors = verifier.verify((results) -> {
+      assertThat(results.get("1"), contains(RecordValue.ABSENT));
+      assertThat(results.get("2"), contains(RecordValue.UNKNOWN_PRESENT));
+      return Collections.emptyList();
+    });
+    assertThat(errors, empty());
+  }
+
+  @Test
+  public void partitionedVerification() throws Exception {
+    StringBuilder journalContents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      journalContents.append(i * 10).append(";").append(i * 10 + 5).append(";Add;").append(i % 17).append(";").append(i < 17).append("\n");
+      journalContents.append(i * 10 + 1).append(";").append(i * 10 + 6).append(";Add;").append(i % 17).append(";false\n");
+    }
+    journalContents.append("2000;2001;Add;3;true\n");
+    journalContents.append("3000;3001;Count;;17\n");
+
+    List<String> singleThreadedErrors = new Verifier(new StringReader(journalContents.toString()), 10, Operations.parser()).verify();
+    List<String> partitionedErrors = new Verifier(new StringReader(journalContents.toString()), 10, Operations.parser(), new VerifierConfiguration().parallelism(4))
+        .verify((results) -> {
+          assertThat(results.size(), is(17));
+          assertThat(results.get("0"), contains(RecordValue.UNKNOWN_PRESENT));
+          assertThat(results.get("3"), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+          return Collections.emptyList();
+        });
+
+    assertThat(partitionedErrors.size(), is(1));
+    assertThat(partitionedErrors, containsInAnyOrder(singleThreadedErrors.toArray()));
+  }
+
+  @Test
+  public void partitionedVerificationStepsInSingleThreadedOrder() throws Exception {
+    String journalContents = "0;1;Add;big;true\n" +
+        "2;3;Delete;big;true\n" +
+        "4;5;Add;big;true\n" +
+        "0;100;Add;y;true\n" +
+        "50;60;Get;y;Optional.empty\n";
+
+    List<String> singleThreadedErrors = new Verifier(new StringReader(journalContents), 4, Operations.parser()).verify();
+    assertThat(singleThreadedErrors, empty());
+    for (int parallelism : new int[] { 2, 4, 8 }) {
+      List<String> partitionedErrors = new Verifier(new StringReader(journalContents), 4, Operations.parser(), new VerifierConfiguration().parallelism(parallelism)).verify();
+      assertThat(partitionedErrors, is(singleThreadedErrors));
+    }
+  }
+
+  @Test
+  public void groupOverExplorationBudgetIsUndecided() throws Exception {
+    StringBuilder journalContents = new StringBuilder();
+    for (int i = 0; i < 6; i++) {
+      journalContents.append("10;20;Add;1;true\n");
+      journalContents.append("10;20;Delete;1;true\n");
+    }
+    journalContents.append("30;40;Add;2;true\n");
+
+    Verifier verifier = new Verifier(new StringReader(journalContents.toString()), 100, Operations.parser(),
+        new VerifierConfiguration().explorationBudget(new ExplorationBudget(100, 1000, 1, TimeUnit.MINUTES)));
+
+    List<String> errors = verifier.verify((results) -> {
+      assertThat(results.get("1"), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+      return Collections.emptyList();
+    });
+    assertThat(errors, empty());
+    assertThat(verifier.getUndecidedGroups().size(), is(1));
+    UndecidedGroup undecidedGroup = verifier.getUndecidedGroups().get(0);
+    assertThat(undecidedGroup.getKey(), is("1"));
+    assertThat(undecidedGroup.getOperationCount(), is(12));
+    assertThat(undecidedGroup.getStartTs(), is(10L));
+    assertThat(undecidedGroup.getEndTs(), is(20L));
+  }
+
   @Test
   @Ignore
   public void integrity() throws Exception {
@@ -43,4 +43,16 @@ public class FileJournalTest {
     List<String> output = Files.lines(file.toPath()).collect(Collectors.toList());
     assertThat(output, contains("1;2;OP1;KEY1;RESULT1", "3;4;OP2;KEY2;RESULT2", "5;6;OP3;KEY3;RESULT3"));
   }
+
+  @Test
+  public void writesSessionIds() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (Journal journal = new FileJournal(file)) {
+      journal.log(1, 2, "OP1", "KEY1", "RESULT1", "S1");
+      journal.log(3, 4, "OP2", "KEY2", "RESULT2");
+    }
+
+    List<String> output = Files.lines(file.toPath()).collect(Collectors.toList());
+    assertThat(output, contains("1;2;OP1;KEY1;RESULT1;S1", "3;4;OP2;KEY2;RESULT2"));
+  }
 }
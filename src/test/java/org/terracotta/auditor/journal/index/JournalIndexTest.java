@@ -0,0 +1,95 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.journal.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.terracotta.auditor.journal.FileJournal;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JournalIndexTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path writeJournal() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (FileJournal journal = new FileJournal(file)) {
+      journal.log(0, 10, "Add", "1", "true");
+      journal.log(5, 11, "Add", "2", "true");
+      journal.log(12, 20, "Get", "1", "A");
+      journal.log(1, 21, "Get", "2", "B");
+      journal.log(22, 30, "Delete", "3", "false");
+      journal.log(25, 31, "Delete", "1", "true");
+      journal.log(32, 40, "Count", "", "1");
+    }
+    return file.toPath();
+  }
+
+  @Test
+  public void indexesBlocks() throws Exception {
+    Path journal = writeJournal();
+
+    JournalIndex index = JournalIndex.build(journal, 2);
+
+    List<IndexBlock> blocks = index.getBlocks();
+    assertThat(blocks.size(), is(4));
+    assertThat(blocks.get(1).getMinStartTs(), is(1L));
+    assertThat(blocks.get(1).getMinEndTs(), is(20L));
+    assertThat(blocks.get(1).getMaxEndTs(), is(21L));
+    assertThat(blocks.get(3).getEntryCount(), is(1));
+    assertThat(JournalIndex.readBlock(journal, blocks.get(1)), contains("12;20;Get;1;A", "1;21;Get;2;B"));
+    assertThat(JournalIndex.readBlock(journal, blocks.get(3)), contains("32;40;Count;;1"));
+  }
+
+  @Test
+  public void findsBlocksByTimeAndKey() throws Exception {
+    Path journal = writeJournal();
+
+    JournalIndex index = JournalIndex.build(journal, 2);
+
+    assertThat(offsetsOf(index.findBlocks(3, 4)), contains(0L, 32L));
+    assertThat(offsetsOf(index.findBlocks(26, 26)), contains(59L));
+    assertThat(offsetsOf(index.findBlocks("3", 0, 100)), contains(59L));
+    assertThat(offsetsOf(index.findBlocks("1", 21, 21)), contains(32L));
+  }
+
+  @Test
+  public void writesAndReadsBack() throws Exception {
+    Path journal = writeJournal();
+    Path indexPath = JournalIndex.indexPathOf(journal);
+
+    JournalIndex.build(journal, 3).writeTo(indexPath);
+    JournalIndex index = JournalIndex.readFrom(indexPath);
+
+    assertThat(index.isUpToDate(journal), is(true));
+    assertThat(index.getBlocks().size(), is(3));
+    assertThat(index.findBlocks("2", 0, 100).get(0).getOffset(), is(0L));
+    assertThat(JournalIndex.readBlock(journal, index.getBlocks().get(1)), contains("1;21;Get;2;B", "22;30;Delete;3;false", "25;31;Delete;1;true"));
+  }
+
+  private static List<Long> offsetsOf(List<IndexBlock> blocks) {
+    return blocks.stream().map(IndexBlock::getOffset).collect(Collectors.toList());
+  }
+}
@@ -24,7 +24,11 @@ import org.terracotta.auditor.verifier.RecordValue;
  */
 public class Add extends KeyOperation {
   public Add(long startTS, long endTS, String key, String result) {
-    super("Add", startTS, endTS, key, result);
+    this(startTS, endTS, key, result, null);
+  }
+
+  public Add(long startTS, long endTS, String key, String result, String sessionId) {
+    super("Add", startTS, endTS, key, result, sessionId);
   }
 
   @Override
@@ -51,4 +55,10 @@ public class Add extends KeyOperation {
 
     return evaluation;
   }
+
+  @Override
+  public boolean canMutate() {
+    // a failed add leaves the value as it was
+    return !getResult().equals("false");
+  }
 }
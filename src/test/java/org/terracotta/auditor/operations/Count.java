@@ -5,6 +5,7 @@
 package org.terracotta.auditor.operations;
 
 import org.terracotta.auditor.verifier.NonKeyOperation;
+import org.terracotta.auditor.verifier.PresentKeyCount;
 import org.terracotta.auditor.verifier.RecordValue;
 import org.terracotta.auditor.verifier.SorHistory;
 
@@ -21,28 +22,21 @@ public class Count extends NonKeyOperation {
   }
 
   @Override
-  public String verifyAndReplay(SorHistory from) {
-    int minPossible = 0;
-    int maxPossible = 0;
+  public boolean canMutate() {
+    return false;
+  }
 
-    Map<String, Set<RecordValue>> firmValues = from.getAt(getStartTS());
-    for (Set<RecordValue> recordValues : firmValues.values()) {
-      boolean extraMin = !recordValues.isEmpty();
-      boolean extraMax = false;
-      for (RecordValue recordValue : recordValues) {
-        if (!recordValue.isAbsent()) {
-          extraMax = true;
-        }
-        extraMin &= (!recordValue.isAbsent());
-      }
-      if (extraMin) minPossible++;
-      if (extraMax) maxPossible++;
-    }
+  @Override
+  public String verifyAndReplay(SorHistory from) {
+    PresentKeyCount presentKeyCount = from.getPresentKeyCountAt(getStartTS());
+    int minPossible = presentKeyCount.getDefinitelyPresent();
+    int maxPossible = presentKeyCount.getPossiblyPresent();
 
     int addToMin = 0;
     int addToMax = 0;
 
     Map<String, Set<RecordValue>> overlappingValues = from.getEverythingOverlapping(getStartTS(), getEndTS());
+    Map<String, Set<RecordValue>> firmValues = from.getAt(getStartTS(), overlappingValues.keySet());
     for (Map.Entry<String, Set<RecordValue>> stringSetEntry : overlappingValues.entrySet()) {
       String key = stringSetEntry.getKey();
       Set<RecordValue> firmVals = firmValues.get(key);
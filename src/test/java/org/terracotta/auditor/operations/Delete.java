@@ -16,7 +16,11 @@ import org.terracotta.auditor.verifier.RecordValue;
 public class Delete extends KeyOperation {
 
   public Delete(long startTS, long endTS, String key, String result) {
-    super("Delete", startTS, endTS, key, result);
+    this(startTS, endTS, key, result, null);
+  }
+
+  public Delete(long startTS, long endTS, String key, String result, String sessionId) {
+    super("Delete", startTS, endTS, key, result, sessionId);
   }
 
   @Override
@@ -38,4 +42,10 @@ public class Delete extends KeyOperation {
 
     return evaluation;
   }
+
+  @Override
+  public boolean canMutate() {
+    // a failed delete only ever happens on an absent value
+    return !getResult().equals("false");
+  }
 }
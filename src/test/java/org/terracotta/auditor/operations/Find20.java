@@ -32,11 +32,16 @@ public class Find20 extends NonKeyOperation {
     journalRecords = parseToMap(result);
   }
 
+  @Override
+  public boolean canMutate() {
+    return false;
+  }
+
   @Override
   public String verifyAndReplay(SorHistory from) {
     List<String> errors = new ArrayList<>();
-    Map<String, Set<RecordValue>> at = from.getAt(getStartTS());
-    Map<String, Set<RecordValue>> overlapping = from.getEverythingOverlapping(getStartTS(), getEndTS());
+    Map<String, Set<RecordValue>> at = from.getAt(getStartTS(), journalKeys);
+    Map<String, Set<RecordValue>> overlapping = from.getEverythingOverlapping(getStartTS(), getEndTS(), journalKeys);
 
     for (String key : journalKeys) {
       String journalRecordValue = journalRecords.get(key);
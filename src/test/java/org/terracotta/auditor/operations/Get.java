@@ -9,13 +9,36 @@ import org.terracotta.auditor.verifier.KeyOperation;
 import org.terracotta.auditor.verifier.Operation;
 import org.terracotta.auditor.verifier.RecordValue;
 
+import java.util.OptionalLong;
+
 /**
  * @author Ludovic Orban
  */
 public class Get extends KeyOperation {
 
+  private final OptionalLong version;
+
   public Get(long startTS, long endTS, String key, String result) {
-    super("Get", startTS, endTS, key, result);
+    this(startTS, endTS, key, result, null);
+  }
+
+  public Get(long startTS, long endTS, String key, String result, String sessionId) {
+    super("Get", startTS, endTS, key, result, sessionId);
+    this.version = parseVersion(result);
+  }
+
+  private static OptionalLong parseVersion(String result) {
+    // the mutation sequence number of the versioned record that was read
+    int startIdx = result.indexOf("msn=");
+    if (startIdx < 0) {
+      return OptionalLong.empty();
+    }
+    startIdx += "msn=".length();
+    int endIdx = startIdx;
+    while (endIdx < result.length() && result.charAt(endIdx) != ',' && result.charAt(endIdx) != '}') {
+      endIdx++;
+    }
+    return OptionalLong.of(Long.parseLong(result.substring(startIdx, endIdx).trim()));
   }
 
   @Override
@@ -44,4 +67,20 @@ public class Get extends KeyOperation {
 
     return evaluation;
   }
+
+  @Override
+  public boolean canMutate() {
+    // a get of a present value refines an unknown value, only a get of an absent one is read-only
+    return !getResult().equals("Optional.empty");
+  }
+
+  @Override
+  public boolean hasVersion() {
+    return version.isPresent();
+  }
+
+  @Override
+  public long getVersion() {
+    return version.orElse(0L);
+  }
 }
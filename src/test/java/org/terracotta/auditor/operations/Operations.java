@@ -32,16 +32,17 @@ public class Operations {
       String name = cols[2];
       String key = cols[3];
       String result = cols[4];
+      String sessionId = cols.length > 5 ? cols[5] : null;
 
       switch (name) {
         case "Add":
-          return new Add(startTS, endTS, key, result);
+          return new Add(startTS, endTS, key, result, sessionId);
         case "Get":
-          return new Get(startTS, endTS, key, result);
+          return new Get(startTS, endTS, key, result, sessionId);
         case "Delete":
-          return new Delete(startTS, endTS, key, result);
+          return new Delete(startTS, endTS, key, result, sessionId);
         case "Update":
-          return new Update(startTS, endTS, key, result);
+          return new Update(startTS, endTS, key, result, sessionId);
         case "Count":
           return new Count(startTS, endTS, result);
         case "Find20":
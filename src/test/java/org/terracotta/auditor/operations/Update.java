@@ -15,7 +15,11 @@ import org.terracotta.auditor.verifier.RecordValue;
 public class Update extends KeyOperation {
 
   public Update(long startTS, long endTS, String key, String result) {
-    super("Update", startTS, endTS, key, result);
+    this(startTS, endTS, key, result, null);
+  }
+
+  public Update(long startTS, long endTS, String key, String result, String sessionId) {
+    super("Update", startTS, endTS, key, result, sessionId);
   }
 
   @Override
@@ -41,4 +45,10 @@ public class Update extends KeyOperation {
 
     return evaluation;
   }
+
+  @Override
+  public boolean canMutate() {
+    // a failed update only ever happens on an absent value
+    return !getResult().equals("false");
+  }
 }
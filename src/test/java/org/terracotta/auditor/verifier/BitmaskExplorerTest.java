@@ -0,0 +1,85 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+import org.terracotta.auditor.operations.Add;
+import org.terracotta.auditor.operations.Delete;
+import org.terracotta.auditor.operations.Get;
+import org.terracotta.auditor.operations.Update;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class BitmaskExplorerTest {
+  @Test
+  public void parallelExpansionGivesSameResultsAsSequential() {
+    List<KeyOperation> keyOperations = concurrentOperations();
+
+    Values sequential = new BitmaskExplorer(keyOperations, Integer.MAX_VALUE).findPossibleOutcomes(Collections.singleton(RecordValue.ABSENT));
+    Values parallel = new BitmaskExplorer(keyOperations, 1).findPossibleOutcomes(Collections.singleton(RecordValue.ABSENT));
+
+    assertThat(sequential.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(parallel.getCommittedValues(), equalTo(sequential.getCommittedValues()));
+    assertThat(parallel.getIntermediateValues(), equalTo(sequential.getIntermediateValues()));
+  }
+
+  @Test
+  public void parallelExpansionChecksTheFrontierWhileBuildingALevel() {
+    boolean[] exceededWhileBuilding = { false };
+    ExplorationBudget.Tracker budget = new ExplorationBudget(Long.MAX_VALUE, 1000, 1, TimeUnit.MINUTES).new Tracker() {
+      @Override
+      void onExpansion(int expandedSize) {
+        try {
+          super.onExpansion(expandedSize);
+        } catch (ExplorationBudget.BudgetExceededException e) {
+          exceededWhileBuilding[0] = true;
+          throw e;
+        }
+      }
+    };
+
+    try {
+      new BitmaskExplorer(concurrentOperations(), 1).findPossibleOutcomes(Collections.singleton(RecordValue.ABSENT), budget);
+      fail("expected BudgetExceededException");
+    } catch (ExplorationBudget.BudgetExceededException e) {
+      assertThat(exceededWhileBuilding[0], is(true));
+    }
+  }
+
+  /**
+   * @return 16 fully concurrent operations, the widest level holds tens of thousands of states.
+   */
+  static List<KeyOperation> concurrentOperations() {
+    List<KeyOperation> keyOperations = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      keyOperations.add(new Add(i, 100 + i, "key", "true"));
+      keyOperations.add(new Delete(i, 100 + i, "key", "true"));
+      keyOperations.add(new Update(i, 100 + i, "key", "true"));
+      keyOperations.add(new Get(i, 100 + i, "key", "Optional.empty"));
+    }
+    keyOperations.sort(new EndTimestampComparator());
+    return keyOperations;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class EndTimestampIndexTest {
+
+  private static List<Long> endingBetween(EndTimestampIndex index, long fromTs, long toTs) {
+    List<Long> ends = new ArrayList<>();
+    index.forEachEndingBetween(fromTs, toTs, (endTs, keyHistory) -> ends.add(endTs));
+    return ends;
+  }
+
+  @Test
+  public void entriesAppendedOutOfOrderAreSortedIn() {
+    EndTimestampIndex index = new EndTimestampIndex();
+    KeyHistory a = new KeyHistory("a");
+    KeyHistory b = new KeyHistory("b");
+    index.add(10, a);
+    index.add(30, a);
+    index.add(20, b);
+    index.add(40, b);
+    index.add(5, b);
+
+    assertThat(endingBetween(index, 0, 100), contains(5L, 10L, 20L, 30L, 40L));
+    assertThat(endingBetween(index, 10, 30), contains(10L, 20L, 30L));
+
+    index.add(25, a);
+    List<String> keys = new ArrayList<>();
+    index.forEachEndingBetween(20, 30, (endTs, keyHistory) -> keys.add(keyHistory.getKey()));
+    assertThat(keys, contains("b", "a", "a"));
+  }
+
+  @Test
+  public void droppedFrontIsReclaimed() {
+    EndTimestampIndex index = new EndTimestampIndex();
+    KeyHistory a = new KeyHistory("a");
+    List<KeyHistory> removed = new ArrayList<>();
+    for (long ts = 1; ts <= 1000; ts++) {
+      // every other entry comes out of order
+      index.add(ts % 2 == 0 ? ts - 1 : ts + 1, a);
+      if (ts % 10 == 0) {
+        index.removeBefore(ts - 4, removed::add);
+      }
+    }
+
+    assertThat(removed.size(), is(995));
+    assertThat(index.size(), is(5));
+    assertThat(endingBetween(index, 0, 2000), contains(996L, 997L, 998L, 999L, 1000L));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class KeyHistoryTest {
+
+  private static Set<RecordValue> value(long ts) {
+    return Collections.singleton(new RecordValue("v" + ts));
+  }
+
+  private static void add(KeyHistory keyHistory, long endTs) {
+    keyHistory.add(endTs - 1, endTs, value(endTs), value(endTs));
+  }
+
+  @Test
+  public void intervalsStaySortedByEnd() {
+    KeyHistory keyHistory = new KeyHistory("key");
+    add(keyHistory, 10);
+    add(keyHistory, 30);
+    add(keyHistory, 20);
+    add(keyHistory, 5);
+
+    assertThat(keyHistory.size(), is(4));
+    assertThat(keyHistory.getEndTs(0), is(5L));
+    assertThat(keyHistory.getEndTs(1), is(10L));
+    assertThat(keyHistory.getEndTs(2), is(20L));
+    assertThat(keyHistory.getEndTs(3), is(30L));
+    assertThat(keyHistory.getStartTs(2), is(19L));
+    assertThat(keyHistory.getCommittedValues(2), is(value(20)));
+
+    assertThat(keyHistory.lowerIndex(20), is(1));
+    assertThat(keyHistory.lowerIndex(21), is(2));
+    assertThat(keyHistory.lowerIndex(5), is(-1));
+    assertThat(keyHistory.ceilingIndex(31), is(4));
+  }
+
+  @Test
+  public void trimmedFrontIsReclaimed() {
+    KeyHistory keyHistory = new KeyHistory("key");
+    for (long ts = 1; ts <= 1000; ts++) {
+      add(keyHistory, ts);
+      if (keyHistory.size() > 3) {
+        keyHistory.removeBefore(keyHistory.size() - 3);
+      }
+    }
+
+    assertThat(keyHistory.size(), is(3));
+    assertThat(keyHistory.getEndTs(0), is(998L));
+    assertThat(keyHistory.getStartTs(2), is(999L));
+    assertThat(keyHistory.getIntermediateValues(2), is(value(1000)));
+  }
+}
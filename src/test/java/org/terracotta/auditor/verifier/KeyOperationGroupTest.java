@@ -0,0 +1,72 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+import org.terracotta.auditor.operations.Add;
+import org.terracotta.auditor.operations.Delete;
+import org.terracotta.auditor.operations.Get;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class KeyOperationGroupTest {
+  @Test
+  public void operationsAreKeptOrderedAcrossAddsAndMerges() {
+    Add add1 = new Add(1, 10, "key", "true");
+    Delete delete1 = new Delete(2, 5, "key", "true");
+    Add add2 = new Add(6, 8, "key", "true");
+    Delete delete2 = new Delete(9, 12, "key", "true");
+
+    KeyOperationGroup group = new KeyOperationGroup(add1);
+    group.add(delete2);
+    KeyOperationGroup other = new KeyOperationGroup(add2);
+    other.add(delete1);
+    group.merge(other);
+
+    assertThat(group.size(), is(4));
+    assertThat(group.startTS(), is(1L));
+    assertThat(group.endTS(), is(12L));
+    assertThat(group.getOperations(), contains(add1, delete1, add2, delete2));
+    assertThat(group.replay(RecordValue.ABSENT).getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT));
+  }
+
+  @Test
+  public void sequentialReplayMatchesExploration() {
+    KeyOperationGroup group = new KeyOperationGroup(new Add(1, 2, "key", "true"));
+    group.add(new Get(3, 4, "key", "v1"));
+    group.add(new Delete(5, 6, "key", "true"));
+    assertThat(group.isSequential(), is(true));
+
+    Set<RecordValue> heads = new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+    Values sequential = group.replaySequentially(heads);
+    Values explored = group.replay(heads, ExplorationBudget.UNLIMITED.start());
+
+    assertThat(sequential.getCommittedValues(), equalTo(explored.getCommittedValues()));
+    assertThat(sequential.getIntermediateValues(), equalTo(explored.getIntermediateValues()));
+    assertThat(sequential.getIntermediateValues(), containsInAnyOrder(RecordValue.UNKNOWN_PRESENT, new RecordValue("v1"), RecordValue.ABSENT));
+
+    group.add(new Get(4, 5, "key", "v1"));
+    assertThat(group.isSequential(), is(false));
+  }
+}
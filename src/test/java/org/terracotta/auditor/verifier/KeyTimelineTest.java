@@ -0,0 +1,124 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+import org.terracotta.auditor.operations.Add;
+import org.terracotta.auditor.operations.Delete;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class KeyTimelineTest {
+  @Test
+  public void disjointOperationsFormSeparateGroups() {
+    KeyTimeline timeline = new KeyTimeline(new Add(10, 20, "key", "true"));
+    timeline.add(new Delete(30, 40, "key", "true"));
+    timeline.add(new Add(1, 2, "key", "true"));
+    timeline.add(new Delete(22, 25, "key", "true"));
+
+    assertThat(timeline.size(), is(4));
+    assertThat(timeline.headEndTS(), is(2L));
+  }
+
+  @Test
+  public void operationsTouchingInProgramOrderFormSeparateGroups() throws Exception {
+    KeyTimeline timeline = new KeyTimeline(new Add(1, 5, "key", "true", "s1"));
+    timeline.add(new Delete(5, 9, "key", "true", "s1"));
+    assertThat(timeline.size(), is(2));
+
+    // another session touching the boundary may still be linearized on either side
+    timeline.add(new Add(9, 12, "key", "true", "s2"));
+    assertThat(timeline.size(), is(2));
+    assertThat(timeline.step(Collections.singleton(RecordValue.ABSENT)).getStepSize(), is(1));
+    assertThat(timeline.step(Collections.singleton(RecordValue.UNKNOWN_PRESENT)).getStepSize(), is(2));
+  }
+
+  @Test
+  public void bridgingOperationMergesAllOverlappedGroups() throws Exception {
+    KeyTimeline timeline = new KeyTimeline(new Add(1, 2, "key", "true"));
+    timeline.add(new Delete(10, 20, "key", "true"));
+    timeline.add(new Add(30, 40, "key", "true"));
+    timeline.add(new Delete(50, 60, "key", "true"));
+    timeline.add(new Add(70, 80, "key", "true"));
+
+    timeline.add(new Add(15, 55, "key", "false"));
+
+    assertThat(timeline.size(), is(3));
+    assertThat(timeline.step(Collections.singleton(RecordValue.ABSENT)).getStepSize(), is(1));
+    StepResult merged = timeline.step(Collections.singleton(RecordValue.UNKNOWN_PRESENT));
+    assertThat(merged.getStepSize(), is(4));
+    assertThat(merged.getStartTs(), is(10L));
+    assertThat(merged.getEndTs(), is(60L));
+    assertThat(timeline.headEndTS(), is(80L));
+  }
+
+  @Test
+  public void loneOperationsAreReplayedAgainstTheHeadValues() throws Exception {
+    Add lone = new Add(1, 2, "key", "true");
+    KeyTimeline timeline = new KeyTimeline(lone);
+    timeline.add(new Delete(10, 20, "key", "true"));
+    timeline.add(new Add(15, 25, "key", "false"));
+
+    assertThat(timeline.pollLoneOperation(), is(lone));
+    assertThat(timeline.replay(lone, new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT))),
+        containsInAnyOrder(RecordValue.UNKNOWN_PRESENT));
+    try {
+      timeline.replay(lone, Collections.singleton(RecordValue.UNKNOWN_PRESENT));
+      fail("expected VerificationException");
+    } catch (VerificationException ve) {
+      assertThat(ve.getStepResult().getPossibleValues(), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+    }
+
+    assertThat(timeline.pollLoneOperation(), nullValue());
+    assertThat(timeline.size(), is(1));
+    assertThat(timeline.step(Collections.singleton(RecordValue.UNKNOWN_PRESENT)).getStepSize(), is(2));
+  }
+
+  @Test
+  public void longOverlapChainIsSteppedUpToCuts() throws Exception {
+    // each add overlaps the previous delete and the next one, but they can only happen in a single order
+    KeyTimeline timeline = new KeyTimeline(new Add(0, 6, "key", "true"));
+    timeline.add(new Delete(5, 11, "key", "true"));
+    for (int i = 1; i < 40; i++) {
+      timeline.add(new Add(i * 10, i * 10 + 6, "key", "true"));
+      timeline.add(new Delete(i * 10 + 5, i * 10 + 11, "key", "true"));
+    }
+    assertThat(timeline.size(), is(1));
+
+    StepResult first = timeline.step(Collections.singleton(RecordValue.ABSENT));
+    assertThat(first.getStepSize(), is(40));
+    assertThat(first.getEndTs(), is(201L));
+    assertThat(first.getPossibleValues(), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(timeline.size(), is(1));
+
+    StepResult second = timeline.step(first.getPossibleValues());
+    assertThat(second.getStepSize(), is(20));
+    assertThat(second.getStartTs(), is(200L));
+
+    StepResult third = timeline.step(second.getPossibleValues());
+    assertThat(third.getStepSize(), is(20));
+    assertThat(third.getPossibleValues(), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(timeline.isEmpty(), is(true));
+  }
+}
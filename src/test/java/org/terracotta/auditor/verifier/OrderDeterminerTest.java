@@ -21,14 +21,21 @@ import org.terracotta.auditor.operations.Delete;
 import org.terracotta.auditor.operations.Get;
 import org.terracotta.auditor.operations.Update;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
 
 public class OrderDeterminerTest {
   @Test
@@ -634,4 +641,174 @@ public class OrderDeterminerTest {
 
     assertThat(results.getCommittedValues(), containsInAnyOrder(RecordValue.UNKNOWN_PRESENT, new RecordValue("0")));
   }
+
+  @Test
+  public void bitmaskAndBitSetEnginesGiveSameResults() {
+    List<List<KeyOperation>> groups = new ArrayList<>();
+    List<KeyOperation> chain = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      chain.add(new Add(i * 10, i * 10 + 6, "key", "true"));
+      chain.add(new Delete(i * 10 + 5, i * 10 + 11, "key", "true"));
+    }
+    groups.add(chain);
+
+    Random random = new Random(42L);
+    String[] values = { "A", "B" };
+    for (int g = 0; g < 50; g++) {
+      List<KeyOperation> group = new ArrayList<>();
+      int size = 2 + random.nextInt(9);
+      for (int i = 0; i < size; i++) {
+        long start = random.nextInt(20);
+        long end = start + 1 + random.nextInt(20);
+        String value = values[random.nextInt(values.length)];
+        switch (random.nextInt(4)) {
+          case 0:
+            group.add(new Add(start, end, "key", random.nextBoolean() ? "true" : "false"));
+            break;
+          case 1:
+            group.add(new Delete(start, end, "key", random.nextBoolean() ? "true" : "false"));
+            break;
+          case 2:
+            group.add(new Update(start, end, "key", random.nextBoolean() ? "true" : "false"));
+            break;
+          default:
+            group.add(new Get(start, end, "key", random.nextBoolean() ? value : "Optional.empty"));
+            break;
+        }
+      }
+      groups.add(group);
+    }
+
+    for (List<KeyOperation> group : groups) {
+      for (RecordValue fromValue : Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT)) {
+        Values bitmaskResults = new OrderDeterminer(group).findPossibleOutcomes(fromValue);
+        Values bitSetResults = new OrderDeterminer(group).exploreWithBitSets(Collections.singleton(fromValue), Integer.MAX_VALUE, ExplorationBudget.UNLIMITED.start()).getValues();
+
+        assertThat(group.toString(), bitSetResults.getCommittedValues(), is(bitmaskResults.getCommittedValues()));
+        assertThat(group.toString(), bitSetResults.getIntermediateValues(), is(bitmaskResults.getIntermediateValues()));
+      }
+    }
+  }
+
+  @Test
+  public void bitSetExplorationChecksTheFrontierWhileBuildingALevel() {
+    boolean[] exceededWhileBuilding = { false };
+    ExplorationBudget.Tracker budget = new ExplorationBudget(Long.MAX_VALUE, 300, 1, TimeUnit.MINUTES).new Tracker() {
+      @Override
+      void onExpansion(int expandedSize) {
+        try {
+          super.onExpansion(expandedSize);
+        } catch (ExplorationBudget.BudgetExceededException e) {
+          exceededWhileBuilding[0] = true;
+          throw e;
+        }
+      }
+    };
+
+    try {
+      new OrderDeterminer(BitmaskExplorerTest.concurrentOperations()).exploreWithBitSets(Collections.singleton(RecordValue.ABSENT), Integer.MAX_VALUE, budget);
+      fail("expected BudgetExceededException");
+    } catch (ExplorationBudget.BudgetExceededException e) {
+      assertThat(exceededWhileBuilding[0], is(true));
+    }
+  }
+
+  @Test
+  public void groupsLargerThanBitmaskAreExplored() {
+    List<KeyOperation> keyOperations = new ArrayList<>();
+    for (int i = 0; i < 35; i++) {
+      keyOperations.add(new Add(i * 10, i * 10 + 6, "key", "true"));
+      keyOperations.add(new Delete(i * 10 + 5, i * 10 + 11, "key", "true"));
+    }
+
+    Values results = new OrderDeterminer(keyOperations).findPossibleOutcomes(RecordValue.ABSENT);
+
+    assertThat(results.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(results.getIntermediateValues(), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+  }
+
+  @Test
+  public void concurrentReadOnlyOperationsAreNotPermuted() {
+    List<KeyOperation> keyOperations = new ArrayList<>();
+    keyOperations.add(new Add(1, 100, "key", "true"));
+    keyOperations.add(new Delete(1, 100, "key", "true"));
+    for (int i = 0; i < 40; i++) {
+      keyOperations.add(new Get(1, 100, "key", "Optional.empty"));
+    }
+
+    Values results = new OrderDeterminer(keyOperations).findPossibleOutcomes(RecordValue.ABSENT);
+
+    assertThat(results.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(results.getIntermediateValues(), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+  }
+
+  @Test
+  public void allInitialValuesAreExploredAtOnce() {
+    Collection<KeyOperation> keyOperations = Arrays.asList(
+            new Add(1, 3, "key", "true"),
+            new Add(2, 4, "key", "false")
+    );
+
+    Values results = new OrderDeterminer(keyOperations).findPossibleOutcomes(new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT)));
+
+    assertThat(results.getCommittedValues(), containsInAnyOrder(RecordValue.UNKNOWN_PRESENT));
+    assertThat(results.getIntermediateValues(), containsInAnyOrder(RecordValue.UNKNOWN_PRESENT));
+  }
+
+  @Test
+  public void versionsOrderOperations() {
+    String v1 = "Optional[LazyVersionedRecord{records=[LazySingleRecord{key=1, msn=1, cells=[]}]}]";
+    String v2 = "Optional[LazyVersionedRecord{records=[LazySingleRecord{key=1, msn=2, cells=[]}]}]";
+    Collection<KeyOperation> keyOperations = Arrays.asList(
+            new Update(1, 10, "key", "true"),
+            new Get(2, 9, "key", v2),
+            new Get(3, 8, "key", v1)
+    );
+
+    Values results = new OrderDeterminer(keyOperations).findPossibleOutcomes(RecordValue.UNKNOWN_PRESENT);
+
+    // without versions, the get of v2 could come before the one of v1 with the update in between, ending with v1
+    assertThat(results.getCommittedValues(), containsInAnyOrder(new RecordValue(v2)));
+
+    Values reversed = new OrderDeterminer(Arrays.asList(
+            new Get(1, 2, "key", v2),
+            new Get(3, 4, "key", v1)
+    )).findPossibleOutcomes(RecordValue.UNKNOWN_PRESENT);
+    assertThat(reversed.getCommittedValues(), empty());
+  }
+
+  @Test
+  public void anyLongIsAVersion() {
+    String v1 = "Optional[LazyVersionedRecord{records=[LazySingleRecord{key=1, msn=" + Long.MIN_VALUE + "}]}]";
+    String v2 = "Optional[LazyVersionedRecord{records=[LazySingleRecord{key=1, msn=" + (Long.MIN_VALUE + 1) + "}]}]";
+    Get lowest = new Get(3, 8, "key", v1);
+    assertThat(lowest.hasVersion(), is(true));
+    assertThat(lowest.getVersion(), is(Long.MIN_VALUE));
+    assertThat(new Get(3, 8, "key", "Optional.empty").hasVersion(), is(false));
+
+    Values results = new OrderDeterminer(Arrays.asList(
+            new Update(1, 10, "key", "true"),
+            new Get(2, 9, "key", v2),
+            lowest
+    )).findPossibleOutcomes(RecordValue.UNKNOWN_PRESENT);
+    assertThat(results.getCommittedValues(), containsInAnyOrder(new RecordValue(v2)));
+  }
+
+  @Test
+  public void sessionsOrderOperations() {
+    Set<RecordValue> heads = new HashSet<>(Arrays.asList(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+
+    Values unordered = new OrderDeterminer(Arrays.asList(
+            new Add(1, 10, "key", "true", "s1"),
+            new Delete(2, 9, "key", "true", "s2")
+    )).findPossibleOutcomes(heads);
+    assertThat(unordered.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT));
+
+    // the same session issued the add first, so the delete cannot be linearized before it
+    Values ordered = new OrderDeterminer(Arrays.asList(
+            new Add(1, 10, "key", "true", "s1"),
+            new Delete(2, 9, "key", "true", "s1")
+    )).findPossibleOutcomes(heads);
+    assertThat(ordered.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT));
+  }
 }
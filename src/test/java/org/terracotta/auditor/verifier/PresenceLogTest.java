@@ -0,0 +1,82 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PresenceLogTest {
+
+  @Test
+  public void countsAreTheSumsOfTheChangesBefore() {
+    PresenceLog log = new PresenceLog();
+    log.add(10, 1, 1);
+    log.add(30, -1, 0);
+    log.add(20, 0, 1);
+    log.add(5, 1, 1);
+
+    assertThat(log.getDefinitelyPresentAt(5), is(0));
+    assertThat(log.getDefinitelyPresentAt(6), is(1));
+    assertThat(log.getPossiblyPresentAt(21), is(3));
+    assertThat(log.getDefinitelyPresentAt(31), is(1));
+    assertThat(log.getPossiblyPresentAt(31), is(3));
+
+    log.removeBefore(20);
+    assertThat(log.size(), is(2));
+    assertThat(log.getDefinitelyPresentAt(20), is(2));
+    assertThat(log.getPossiblyPresentAt(20), is(2));
+    assertThat(log.getPossiblyPresentAt(100), is(3));
+  }
+
+  @Test
+  public void outOfOrderChangesGiveTheSameCounts() {
+    Random random = new Random(42L);
+    PresenceLog log = new PresenceLog();
+    List<long[]> changes = new ArrayList<>();
+    long watermark = 0;
+    for (int i = 0; i < 5000; i++) {
+      long ts = watermark + random.nextInt(200);
+      int definitelyDelta = random.nextInt(3) - 1;
+      int possiblyDelta = random.nextInt(3) - 1;
+      log.add(ts, definitelyDelta, possiblyDelta);
+      changes.add(new long[] { ts, definitelyDelta, possiblyDelta });
+
+      if (random.nextInt(10) == 0) {
+        long queried = watermark + random.nextInt(250);
+        int definitelyPresent = 0;
+        int possiblyPresent = 0;
+        for (long[] change : changes) {
+          if (change[0] < queried) {
+            definitelyPresent += change[1];
+            possiblyPresent += change[2];
+          }
+        }
+        assertThat(log.getDefinitelyPresentAt(queried), is(definitelyPresent));
+        assertThat(log.getPossiblyPresentAt(queried), is(possiblyPresent));
+      }
+      if (random.nextInt(50) == 0) {
+        watermark += random.nextInt(20);
+        log.removeBefore(watermark);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+import org.terracotta.auditor.operations.Add;
+import org.terracotta.auditor.operations.Delete;
+import org.terracotta.auditor.operations.Get;
+import org.terracotta.auditor.operations.Update;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class ReplayCacheTest {
+  @Test
+  public void sameShapeIsReplayedFromCache() {
+    GroupReplayer replayer = new GroupReplayer(ExplorationBudget.UNLIMITED, 16);
+    Set<RecordValue> heads = new HashSet<>(Arrays.asList(RecordValue.ABSENT, new RecordValue("v1"), new RecordValue("v2")));
+
+    Values first = replayer.replay("a", group(0L, "a"), heads);
+    Values second = replayer.replay("b", group(1000L, "b"), heads);
+    Values uncached = new GroupReplayer(ExplorationBudget.UNLIMITED).replay("c", group(50L, "c"), heads);
+
+    assertThat(replayer.getCacheMisses(), is(1L));
+    assertThat(replayer.getCacheHits(), is(1L));
+    assertThat(second.getCommittedValues(), equalTo(first.getCommittedValues()));
+    assertThat(second.getIntermediateValues(), equalTo(first.getIntermediateValues()));
+    assertThat(second.getCommittedValues(), equalTo(uncached.getCommittedValues()));
+    assertThat(second.getIntermediateValues(), equalTo(uncached.getIntermediateValues()));
+    assertThat(second.getCommittedValues(), containsInAnyOrder(RecordValue.ABSENT, RecordValue.UNKNOWN_PRESENT, new RecordValue("v1")));
+  }
+
+  @Test
+  public void freshInputValuesAreRebound() {
+    GroupReplayer replayer = new GroupReplayer(ExplorationBudget.UNLIMITED, 16);
+    KeyOperationGroup group = new KeyOperationGroup(new Add(1, 2, "key", "false"));
+    group.add(new Get(3, 4, "key", "v1"));
+    group.add(new Update(3, 4, "key", "true"));
+
+    replayer.replay("key", group, new HashSet<>(Arrays.asList(new RecordValue("x"), new RecordValue("v1"))));
+    Values values = replayer.replay("key", group, new HashSet<>(Arrays.asList(new RecordValue("y"), new RecordValue("v1"))));
+    Values uncached = group.replay(new HashSet<>(Arrays.asList(new RecordValue("y"), new RecordValue("v1"))), ExplorationBudget.UNLIMITED.start());
+
+    assertThat(replayer.getCacheHits(), is(1L));
+    assertThat(values.getCommittedValues(), equalTo(uncached.getCommittedValues()));
+    assertThat(values.getIntermediateValues(), equalTo(uncached.getIntermediateValues()));
+    assertThat(values.getIntermediateValues(), containsInAnyOrder(new RecordValue("y"), new RecordValue("v1"), RecordValue.UNKNOWN_PRESENT));
+  }
+
+  private static KeyOperationGroup group(long offset, String key) {
+    KeyOperationGroup group = new KeyOperationGroup(new Add(offset + 1, offset + 10, key, "true"));
+    group.add(new Delete(offset + 2, offset + 12, key, "true"));
+    group.add(new Get(offset + 5, offset + 11, key, "v1"));
+    group.add(new Update(offset + 3, offset + 13, key, "false"));
+    return group;
+  }
+}
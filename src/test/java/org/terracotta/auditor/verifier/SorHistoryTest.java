@@ -0,0 +1,194 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isIn;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+public class SorHistoryTest {
+
+  private static final RecordValue V1 = new RecordValue("v1");
+  private static final RecordValue V2 = new RecordValue("v2");
+
+  private static Set<RecordValue> setOf(RecordValue... values) {
+    return new HashSet<>(Arrays.asList(values));
+  }
+
+  @Test
+  public void getAtReturnsTheLastValueCommittedBefore() {
+    SorHistory history = new SorHistory();
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("a", 5, 8, setOf(V2), setOf(V1, V2));
+    history.add("b", 3, 4, setOf(RecordValue.ABSENT), setOf(RecordValue.ABSENT));
+
+    Map<String, Set<RecordValue>> at = history.getAt(6);
+    assertThat(at.get("a"), containsInAnyOrder(V1));
+    // absent values are left out
+    assertThat(at, not(hasKey("b")));
+
+    assertThat(history.getAt(9).get("a"), containsInAnyOrder(V2));
+    assertThat(history.getAt(2).isEmpty(), is(true));
+  }
+
+  @Test
+  public void getEverythingOverlappingOnlyReturnsIntervalsInRange() {
+    SorHistory history = new SorHistory();
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("a", 10, 100, setOf(V2), setOf(V1, V2));
+    history.add("b", 3, 4, setOf(RecordValue.ABSENT), setOf(RecordValue.ABSENT));
+    history.add("c", 50, 60, setOf(V1), setOf(RecordValue.ABSENT, V1));
+
+    Map<String, Set<RecordValue>> overlapping = history.getEverythingOverlapping(40, 45);
+    assertThat(overlapping.keySet(), containsInAnyOrder("a"));
+    assertThat(overlapping.get("a"), containsInAnyOrder(V1, V2));
+
+    assertThat(history.getEverythingOverlapping(2, 55).keySet(), containsInAnyOrder("a", "b", "c"));
+  }
+
+  @Test
+  public void overlappingValuesDoNotAlterTheHistory() {
+    SorHistory history = new SorHistory();
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("a", 3, 4, setOf(V2), setOf(V2));
+
+    history.getEverythingOverlapping(1, 4).get("a").add(RecordValue.UNKNOWN_PRESENT);
+
+    assertThat(history.getEverythingOverlapping(1, 2).get("a"), containsInAnyOrder(V1));
+    assertThat(history.getEverythingOverlapping(3, 4).get("a"), containsInAnyOrder(V2));
+  }
+
+  @Test
+  public void advancingTheLowWatermarkKeepsTheLastValueBefore() {
+    SorHistory history = new SorHistory();
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("a", 3, 4, setOf(V2), setOf(V2));
+    history.add("a", 7, 8, setOf(RecordValue.ABSENT), setOf(RecordValue.ABSENT));
+
+    history.advanceLowWatermark(6);
+    // the watermark never goes back
+    history.advanceLowWatermark(3);
+    assertThat(history.getLowWatermark(), is(6L));
+
+    assertThat(history.getAt(6).get("a"), containsInAnyOrder(V2));
+    // queries never start before the watermark, so the interval kept for the values at the watermark overlaps nothing
+    assertThat(history.getEverythingOverlapping(6, 10).get("a"), containsInAnyOrder(RecordValue.ABSENT));
+    assertThat(history.getHeadOf("a"), is(Collections.singleton(RecordValue.ABSENT)));
+  }
+
+  @Test
+  public void averagesCountTheKeysVisitedPerQuery() {
+    SorHistory history = new SorHistory();
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("b", 3, 4, setOf(V2), setOf(V2));
+    history.add("c", 5, 6, setOf(V1), setOf(V1));
+
+    history.getAt(10);
+    history.getAt(3);
+
+    assertThat(history.averages(), startsWith("at avg: 3.0 "));
+  }
+
+  @Test
+  public void keyTargetedQueriesMatchTheAllKeyOnes() {
+    SorHistory history = new SorHistory(4);
+    for (int i = 0; i < 20; i++) {
+      history.add("k" + i, i, i + 5, setOf(i % 3 == 0 ? RecordValue.ABSENT : V1), setOf(RecordValue.ABSENT, V1));
+      history.add("k" + i, i + 10, i + 12, setOf(V2), setOf(V1, V2));
+    }
+    List<String> keys = Arrays.asList("k1", "k3", "k12", "k19", "missing");
+
+    Map<String, Set<RecordValue>> at = history.getAt(17);
+    Map<String, Set<RecordValue>> overlapping = history.getEverythingOverlapping(14, 16);
+    Map<String, Set<RecordValue>> targetedAt = history.getAt(17, keys);
+    Map<String, Set<RecordValue>> targetedOverlapping = history.getEverythingOverlapping(14, 16, keys);
+    for (String key : keys) {
+      assertThat(targetedAt.get(key), is(at.get(key)));
+      assertThat(targetedOverlapping.get(key), is(overlapping.get(key)));
+    }
+    assertThat(targetedAt.keySet(), everyItem(isIn(keys)));
+    assertThat(targetedOverlapping.keySet(), everyItem(isIn(keys)));
+  }
+
+  @Test
+  public void presentKeyCountFollowsTheCommittedValues() {
+    SorHistory history = new SorHistory(2);
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("b", 3, 4, setOf(RecordValue.ABSENT, V1), setOf(RecordValue.ABSENT, V1));
+    history.add("a", 5, 6, setOf(RecordValue.ABSENT), setOf(RecordValue.ABSENT, V1));
+    history.add("c", 5, 8, setOf(V2), setOf(RecordValue.ABSENT, V2));
+    // added out of order, between two values of the key
+    history.add("a", 3, 4, setOf(V2), setOf(V1, V2));
+
+    for (long ts = 0; ts < 10; ts++) {
+      assertPresentKeyCount(history, ts);
+    }
+
+    history.advanceLowWatermark(5);
+    history.add("b", 9, 10, setOf(V2), setOf(V1, V2));
+    for (long ts = 5; ts < 12; ts++) {
+      assertPresentKeyCount(history, ts);
+    }
+  }
+
+  private static void assertPresentKeyCount(SorHistory history, long ts) {
+    int definitelyPresent = 0;
+    int possiblyPresent = 0;
+    for (Set<RecordValue> values : history.getAt(ts).values()) {
+      if (!values.contains(RecordValue.ABSENT)) {
+        definitelyPresent++;
+      }
+      possiblyPresent++;
+    }
+    PresentKeyCount count = history.getPresentKeyCountAt(ts);
+    assertThat("definitely present at " + ts, count.getDefinitelyPresent(), is(definitelyPresent));
+    assertThat("possibly present at " + ts, count.getPossiblyPresent(), is(possiblyPresent));
+  }
+
+  @Test
+  public void keyOnlyHistoryOnlyKeepsHeads() {
+    SorHistory history = new SorHistory(2, true);
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.add("a", 5, 8, setOf(V2), setOf(V1, V2));
+    // older than the head, so it is not the head
+    history.add("a", 3, 4, setOf(RecordValue.ABSENT), setOf(RecordValue.ABSENT));
+
+    assertThat(history.getHeadOf("a"), containsInAnyOrder(V2));
+    assertThat(history.getHeads().keySet(), containsInAnyOrder("a"));
+    assertThat(history.getHeadOf("b"), containsInAnyOrder(RecordValue.ABSENT));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void keyOnlyHistoryCannotBeQueriedInTime() {
+    SorHistory history = new SorHistory(1, true);
+    history.add("a", 1, 2, setOf(V1), setOf(V1));
+    history.getAt(3);
+  }
+}
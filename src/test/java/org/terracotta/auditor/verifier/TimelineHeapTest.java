@@ -0,0 +1,92 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.auditor.verifier;
+
+import org.junit.Test;
+import org.terracotta.auditor.operations.Add;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TimelineHeapTest {
+  @Test
+  public void largestFirstFollowsTimelineGrowth() throws Exception {
+    TimelineHeap heap = new TimelineHeap(SchedulingPolicy.largestFirst());
+    KeyTimeline a = new KeyTimeline(new Add(1, 2, "a", "true"));
+    KeyTimeline b = new KeyTimeline(new Add(1, 2, "b", "true"));
+    heap.update(a);
+    heap.update(b);
+
+    b.add(new Add(3, 4, "b", "false"));
+    heap.update(b);
+    assertThat(heap.peek(), sameInstance(b));
+
+    b.step(Collections.singleton(RecordValue.ABSENT));
+    heap.update(b);
+    a.add(new Add(3, 4, "a", "false"));
+    a.add(new Add(5, 6, "a", "false"));
+    heap.update(a);
+    assertThat(heap.peek(), sameInstance(a));
+  }
+
+  @Test
+  public void tiesAreBrokenByOldestGroupThenCreationOrder() throws Exception {
+    TimelineHeap heap = new TimelineHeap(SchedulingPolicy.largestFirst());
+    KeyTimeline a = new KeyTimeline(new Add(5, 6, "a", "true"));
+    KeyTimeline b = new KeyTimeline(new Add(1, 2, "b", "true"));
+    KeyTimeline c = new KeyTimeline(new Add(1, 2, "c", "true"));
+    a.sequence = 0;
+    b.sequence = 2;
+    c.sequence = 1;
+    heap.update(a);
+    heap.update(b);
+    heap.update(c);
+
+    assertThat(heap.peek(), sameInstance(c));
+    assertThat(heap.compare(b, a) < 0, is(true));
+    assertThat(heap.compare(c, b) < 0, is(true));
+  }
+
+  @Test
+  public void oldestGroupFirstDropsEmptyTimelines() throws Exception {
+    TimelineHeap heap = new TimelineHeap(SchedulingPolicy.oldestGroupFirst());
+    KeyTimeline a = new KeyTimeline(new Add(5, 6, "a", "true"));
+    KeyTimeline b = new KeyTimeline(new Add(1, 2, "b", "true"));
+    KeyTimeline c = new KeyTimeline(new Add(3, 4, "c", "true"));
+    heap.update(a);
+    heap.update(b);
+    heap.update(c);
+    assertThat(heap.peek(), sameInstance(b));
+
+    b.step(Collections.singleton(RecordValue.ABSENT));
+    heap.update(b);
+    assertThat(heap.size(), is(2));
+    assertThat(heap.peek(), sameInstance(c));
+
+    c.step(Collections.singleton(RecordValue.ABSENT));
+    heap.update(c);
+    assertThat(heap.peek(), sameInstance(a));
+
+    a.step(Collections.singleton(RecordValue.ABSENT));
+    heap.update(a);
+    assertThat(heap.isEmpty(), is(true));
+    assertThat(heap.peek(), is(nullValue()));
+  }
+}